@@ -0,0 +1,70 @@
+package benchmarks;
+
+import com.decomp.analysis.Class_;
+import com.decomp.analysis.Invocation_;
+import com.decomp.analysis.Method_;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+public class DataLoaderHandle {
+    // DataLoader is in the default package, which cannot be imported from the benchmark package that JMH requires,
+    // so it is called through reflection. The lookups are done once and cost nothing next to the measured calls.
+    private final Object dataLoader;
+    private final Object resultCache;
+    private final Method save;
+    private final Method getClasses;
+    private final Method getMethods;
+    private final Method invalidate;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DataLoaderHandle(String outputPath, String storageFormat) throws ReflectiveOperationException {
+        Class<?> loaderClass = Class.forName("DataLoader");
+        Class<? extends Enum> formatClass = (Class<? extends Enum>) Class.forName("DataLoader$StorageFormat");
+        dataLoader = loaderClass.getConstructor().newInstance();
+        loaderClass.getMethod("setOutputPath", String.class).invoke(dataLoader, outputPath);
+        loaderClass.getMethod("setStorageFormat", formatClass).invoke(dataLoader, Enum.valueOf(formatClass,
+                storageFormat));
+        save = loaderClass.getDeclaredMethod("save", List.class, List.class, List.class, String.class);
+        save.setAccessible(true);
+        getClasses = loaderClass.getMethod("getClasses", String.class);
+        getMethods = loaderClass.getMethod("getMethods", String.class);
+        resultCache = loaderClass.getMethod("getResultCache").invoke(dataLoader);
+        invalidate = resultCache.getClass().getMethod("invalidate", String.class);
+    }
+
+    public void save(List<Class_> classes, List<Method_> methods, List<Invocation_> invocations, String appName)
+            throws IOException {
+        call(save, dataLoader, classes, methods, invocations, appName);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Class_> getClasses(String appName) throws IOException {
+        return (List<Class_>) call(getClasses, dataLoader, appName);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Method_> getMethods(String appName) throws IOException {
+        return (List<Method_>) call(getMethods, dataLoader, appName);
+    }
+
+    public void clearCache() throws IOException {
+        call(invalidate, resultCache, "");
+    }
+
+    private static Object call(Method method, Object target, Object... args) throws IOException {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class Fixtures {
+    // the bundled application is copied once per module (module0/src/main/java/shop/copy0, ...) so that the same
+    // sources give trees of any size, each copy in its own package
+    private static final String fixturePackage = "shop";
+    private static final String[] sourceFiles = {
+            "Customer.java",
+            "DiscountPolicy.java",
+            "Entity.java",
+            "InMemoryRepository.java",
+            "Order.java",
+            "OrderLine.java",
+            "OrderService.java",
+            "PricingPolicy.java",
+            "Product.java",
+            "Repository.java"
+    };
+
+    public static Path create(int modules) throws IOException {
+        Path root = Files.createTempDirectory("analysis-fixture-");
+        for (String sourceFile : sourceFiles) {
+            String content = read(sourceFile);
+            for (int i = 0; i < modules; i++) {
+                String copyPackage = fixturePackage + ".copy" + i;
+                Path packagePath = root.resolve("module" + i).resolve("src/main/java")
+                        .resolve(copyPackage.replace('.', '/'));
+                Files.createDirectories(packagePath);
+                Files.write(packagePath.resolve(sourceFile), content.replace(
+                        "package " + fixturePackage + ";", "package " + copyPackage + ";")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return root;
+    }
+
+    public static void delete(Path path) throws IOException {
+        if ((path == null) || !Files.exists(path))
+            return;
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(p);
+        }
+    }
+
+    private static String read(String sourceFile) throws IOException {
+        String resource = "/fixtures/" + fixturePackage + "/" + sourceFile;
+        try (InputStream in = Fixtures.class.getResourceAsStream(resource)) {
+            if (in == null)
+                throw new IOException("Fixture " + resource + " not found");
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package benchmarks;
+
+import com.decomp.analysis.Class_;
+import com.decomp.analysis.Invocation_;
+import com.decomp.analysis.Method_;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import processors.ASTParser;
+import processors.InvocationProcessor;
+import processors.ModelScanner;
+import processors.TypeProcessor;
+import spoon.Launcher;
+import spoon.OutputType;
+import spoon.reflect.code.CtInvocation;
+import spoon.reflect.declaration.CtType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// the Spoon model is built once per trial, only the processors are measured
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessorBenchmark {
+    private static final String appName = "benchmark";
+    @Param({"1", "4", "16"})
+    public int modules;
+    private Path fixturePath;
+    private ModelScanner scanner;
+    private TypeProcessor processedTypes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixturePath = Fixtures.create(modules);
+        Launcher launcher = new Launcher();
+        launcher.getEnvironment().setOutputType(OutputType.NO_OUTPUT);
+        ArrayList<String> inputPaths = new ArrayList<>();
+        ASTParser.find_src(fixturePath.toString(), inputPaths, true);
+        for (String inputPath : inputPaths)
+            launcher.addInputResource(inputPath);
+        launcher.buildModel();
+        scanner = new ModelScanner();
+        scanner.scan(launcher.getModel().getRootPackage());
+        processedTypes = processTypes();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.delete(fixturePath);
+    }
+
+    private TypeProcessor processTypes() {
+        TypeProcessor typeProcessor = new TypeProcessor(new ArrayList<>(), new ArrayList<>(), appName);
+        typeProcessor.setScanner(scanner);
+        for (CtType<?> ctType : scanner.getTypes()) {
+            if (typeProcessor.isToBeProcessed(ctType))
+                typeProcessor.process(ctType);
+        }
+        typeProcessor.processingDone();
+        return typeProcessor;
+    }
+
+    @Benchmark
+    public List<Method_> typeProcessor() {
+        return processTypes().getMethods();
+    }
+
+    // the invocations are added to copies of the lists so that every run starts from the same types and methods
+    @Benchmark
+    public List<Method_> invocationProcessor() {
+        List<Class_> objects = new ArrayList<>(processedTypes.getObjects());
+        List<Method_> methods = new ArrayList<>(processedTypes.getMethods());
+        InvocationProcessor invocationProcessor = new InvocationProcessor(objects, methods, appName);
+        invocationProcessor.setNames(processedTypes.getNames());
+        for (CtInvocation<?> ctInvocation : scanner.getInvocations()) {
+            if (invocationProcessor.isToBeProcessed(ctInvocation))
+                invocationProcessor.process(ctInvocation);
+        }
+        invocationProcessor.processingDone();
+        return methods;
+    }
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import com.decomp.analysis.Class_;
+import com.decomp.analysis.Invocation_;
+import com.decomp.analysis.Method_;
+import org.apache.commons.lang3.tuple.Triple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import processors.ASTParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// the fixture is analyzed once per trial, then its results are saved and loaded in every storage format
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+    private static final String loadedApp = "loaded";
+    private static final String savedApp = "saved";
+    @Param({"1", "4", "16"})
+    public int modules;
+    @Param({"JSON", "BINARY", "COMPACT"})
+    public String format;
+    private Path fixturePath;
+    private Path outputPath;
+    private DataLoaderHandle dataLoader;
+    private List<Class_> classes;
+    private List<Method_> methods;
+    private List<Invocation_> invocations;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ReflectiveOperationException {
+        fixturePath = Fixtures.create(modules);
+        outputPath = Files.createTempDirectory("analysis-output-");
+        Triple<List<Class_>, List<Method_>, List<Invocation_>> results =
+                new ASTParser(fixturePath.toString(), loadedApp, true).analyze();
+        classes = results.getLeft();
+        methods = results.getMiddle();
+        invocations = results.getRight();
+        dataLoader = new DataLoaderHandle(outputPath.toString(), format);
+        dataLoader.save(classes, methods, invocations, loadedApp);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.delete(fixturePath);
+        Fixtures.delete(outputPath);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        dataLoader.save(classes, methods, invocations, savedApp);
+    }
+
+    // the cache is emptied first so that the results are read from the saved files every time
+    @Benchmark
+    public List<Class_> getClasses() throws IOException {
+        dataLoader.clearCache();
+        return dataLoader.getClasses(loadedApp);
+    }
+
+    @Benchmark
+    public List<Method_> getMethods() throws IOException {
+        dataLoader.clearCache();
+        return dataLoader.getMethods(loadedApp);
+    }
+}
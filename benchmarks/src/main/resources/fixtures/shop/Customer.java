@@ -0,0 +1,38 @@
+package shop;
+
+public class Customer extends Entity {
+    private final String name;
+    private final String email;
+    private int loyaltyPoints = 0;
+
+    public Customer(long id, String name, String email) {
+        super(id);
+        this.name = name;
+        this.email = email;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public int getLoyaltyPoints() {
+        return loyaltyPoints;
+    }
+
+    public void addLoyaltyPoints(int points) {
+        loyaltyPoints += points;
+    }
+
+    public boolean isPremium() {
+        return loyaltyPoints >= 1000;
+    }
+
+    @Override
+    public String describe() {
+        return name + " <" + email + ">";
+    }
+}
@@ -0,0 +1,24 @@
+package shop;
+
+public class DiscountPolicy implements PricingPolicy {
+    private final double premiumDiscount;
+    private final double bulkDiscount;
+    private final int bulkQuantity;
+
+    public DiscountPolicy(double premiumDiscount, double bulkDiscount, int bulkQuantity) {
+        this.premiumDiscount = premiumDiscount;
+        this.bulkDiscount = bulkDiscount;
+        this.bulkQuantity = bulkQuantity;
+    }
+
+    @Override
+    public double apply(Order order, double amount) {
+        double discount = 0;
+        if (order.getCustomer().isPremium())
+            discount += premiumDiscount;
+        int quantity = order.getLines().stream().mapToInt(OrderLine::getQuantity).sum();
+        if (quantity >= bulkQuantity)
+            discount += bulkDiscount;
+        return amount * (1 - Math.min(discount, 0.5));
+    }
+}
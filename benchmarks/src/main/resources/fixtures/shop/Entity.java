@@ -0,0 +1,39 @@
+package shop;
+
+import java.util.Objects;
+
+/**
+ * Base class of everything that is stored in a repository.
+ */
+public abstract class Entity {
+    private final long id;
+
+    protected Entity(long id) {
+        this.id = id;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public abstract String describe();
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if ((other == null) || (getClass() != other.getClass()))
+            return false;
+        return id == ((Entity) other).id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass().getName(), id);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "#" + id + " " + describe();
+    }
+}
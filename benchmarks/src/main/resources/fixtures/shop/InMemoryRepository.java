@@ -0,0 +1,39 @@
+package shop;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+public class InMemoryRepository<T extends Entity> implements Repository<T> {
+    private final Map<Long, T> entities = new LinkedHashMap<>();
+
+    @Override
+    public T save(T entity) {
+        entities.put(entity.getId(), entity);
+        return entity;
+    }
+
+    @Override
+    public Optional<T> findById(long id) {
+        return Optional.ofNullable(entities.get(id));
+    }
+
+    @Override
+    public List<T> findAll() {
+        return new ArrayList<>(entities.values());
+    }
+
+    @Override
+    public List<T> findWhere(Predicate<T> predicate) {
+        return entities.values().stream().filter(predicate).collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean delete(long id) {
+        return entities.remove(id) != null;
+    }
+}
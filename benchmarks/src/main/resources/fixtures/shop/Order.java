@@ -0,0 +1,52 @@
+package shop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class Order extends Entity {
+    public enum Status {
+        OPEN,
+        PAID,
+        SHIPPED,
+        CANCELLED
+    }
+
+    private final Customer customer;
+    private final List<OrderLine> lines = new ArrayList<>();
+    private Status status = Status.OPEN;
+
+    public Order(long id, Customer customer) {
+        super(id);
+        this.customer = customer;
+    }
+
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    public List<OrderLine> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public void addLine(Product product, int quantity) {
+        lines.add(new OrderLine(product, quantity));
+    }
+
+    public double total() {
+        return lines.stream().mapToDouble(OrderLine::getAmount).sum();
+    }
+
+    @Override
+    public String describe() {
+        return customer.getName() + " " + status + " " + total();
+    }
+}
@@ -0,0 +1,75 @@
+package shop;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class OrderService {
+    private final Repository<Order> orders;
+    private final Repository<Product> products;
+    private final Repository<Customer> customers;
+    private final PricingPolicy pricingPolicy;
+    private long nextOrderId = 1;
+
+    public OrderService(Repository<Order> orders, Repository<Product> products, Repository<Customer> customers,
+                        PricingPolicy pricingPolicy) {
+        this.orders = orders;
+        this.products = products;
+        this.customers = customers;
+        this.pricingPolicy = pricingPolicy;
+    }
+
+    public Order createOrder(long customerId) {
+        Customer customer = customers.findById(customerId)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown customer " + customerId));
+        return orders.save(new Order(nextOrderId++, customer));
+    }
+
+    public boolean addProduct(long orderId, long productId, int quantity) {
+        Order order = orders.findById(orderId).orElseThrow(IllegalArgumentException::new);
+        Product product = products.findById(productId).orElseThrow(IllegalArgumentException::new);
+        if ((order.getStatus() != Order.Status.OPEN) || !product.reserve(quantity))
+            return false;
+        order.addLine(product, quantity);
+        return true;
+    }
+
+    public double checkout(long orderId) {
+        Order order = orders.findById(orderId).orElseThrow(IllegalArgumentException::new);
+        double amount = pricingPolicy.apply(order, order.total());
+        order.setStatus(Order.Status.PAID);
+        order.getCustomer().addLoyaltyPoints((int) amount);
+        return amount;
+    }
+
+    public void cancel(long orderId) {
+        orders.findById(orderId).ifPresent(order -> {
+            for (OrderLine line : order.getLines())
+                line.getProduct().restock(line.getQuantity());
+            order.setStatus(Order.Status.CANCELLED);
+        });
+    }
+
+    public List<Order> openOrders(long customerId) {
+        return orders.findWhere(order -> (order.getCustomer().getId() == customerId)
+                && (order.getStatus() == Order.Status.OPEN));
+    }
+
+    public List<Product> bestSellers(int limit) {
+        return orders.findAll().stream()
+                .flatMap(order -> order.getLines().stream())
+                .collect(Collectors.groupingBy(OrderLine::getProduct, Collectors.summingInt(OrderLine::getQuantity)))
+                .entrySet().stream()
+                .sorted((a, b) -> b.getValue().compareTo(a.getValue()))
+                .limit(limit)
+                .map(entry -> entry.getKey())
+                .collect(Collectors.toList());
+    }
+
+    public List<Customer> topCustomers(int limit) {
+        return customers.findAll().stream()
+                .sorted(Comparator.comparingInt(Customer::getLoyaltyPoints).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,5 @@
+package shop;
+
+public interface PricingPolicy {
+    double apply(Order order, double amount);
+}
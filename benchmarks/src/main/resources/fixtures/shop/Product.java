@@ -0,0 +1,51 @@
+package shop;
+
+public class Product extends Entity {
+    private String name;
+    private double price;
+    private int stock;
+
+    public Product(long id, String name, double price, int stock) {
+        super(id);
+        this.name = name;
+        this.price = price;
+        this.stock = stock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+
+    // returns false when there is not enough stock left
+    public boolean reserve(int quantity) {
+        if (quantity > stock)
+            return false;
+        stock -= quantity;
+        return true;
+    }
+
+    public void restock(int quantity) {
+        stock += quantity;
+    }
+
+    @Override
+    public String describe() {
+        return name + " (" + price + ")";
+    }
+}
@@ -0,0 +1,21 @@
+package shop;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+public interface Repository<T extends Entity> {
+    T save(T entity);
+
+    Optional<T> findById(long id);
+
+    List<T> findAll();
+
+    List<T> findWhere(Predicate<T> predicate);
+
+    boolean delete(long id);
+
+    default int count() {
+        return findAll().size();
+    }
+}
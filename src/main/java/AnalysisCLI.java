@@ -2,8 +2,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,6 +37,42 @@ public class AnalysisCLI implements Runnable {
             names = {"-d", "--distributed"},
             description = "application has a distributed architecture.")
     private boolean isDistributed;
+
+    @CommandLine.Option(
+            names = {"-w", "--workers"},
+            description = "maximum number of services analyzed in parallel for distributed applications.")
+    private int maxWorkers;
+
+    @CommandLine.Option(
+            names = {"-f", "--format"},
+            description = "storage format of the results: ${COMPLETION-CANDIDATES} (default: JSON).")
+    private DataLoader.StorageFormat storageFormat;
+
+    @CommandLine.Option(
+            names = {"-r", "--refresh"},
+            description = "re-analyze the source files that changed since the last analysis.")
+    private boolean refresh;
+
+    @CommandLine.Option(
+            names = {"--full-clone"},
+            description = "clone the whole history and tree of the repository instead of only the latest Java sources.")
+    private boolean fullClone;
+
+    @CommandLine.Option(
+            names = {"--skip-text"},
+            description = "do not extract the source code and textual terms of the classes and methods.")
+    private boolean skipText;
+
+    @CommandLine.Option(
+            names = {"--lazy-content"},
+            description = "save the position of the classes and methods in their source files instead of their " +
+                    "source code, which is then read from the files on demand.")
+    private boolean lazyContent;
+
+    @CommandLine.Option(
+            names = {"--jfr"},
+            description = "record the analysis with Java Flight Recorder into the given file.")
+    private String recordingPath;
     private final DataLoader dataLoader;
 //    private final List<String> ALLOWED_APPS = Arrays.asList("petclinic", "plants");
 
@@ -51,10 +90,19 @@ public class AnalysisCLI implements Runnable {
         if (outputPath != null){
             dataLoader.setOutputPath(outputPath);
         }
-        if (!dataLoader.exists(appName)){
+        dataLoader.setMaxWorkers(maxWorkers);
+        if (skipText)
+            dataLoader.setSkipText(true);
+        if (lazyContent)
+            dataLoader.setLazyContent(true);
+        if (storageFormat != null){
+            dataLoader.setStorageFormat(storageFormat);
+        }
+        if (refresh || !dataLoader.exists(appName)){
+            RepoHandler repoHandler = null;
             if ((appPath == null)||(appPath.isEmpty())){
                 logger.info("Loading source code from default path!");
-                RepoHandler repoHandler = new RepoHandler(appName, "");
+                repoHandler = new RepoHandler(appName, "");
                 try{
                     appPath = repoHandler.getOrClone();
                 }
@@ -66,7 +114,9 @@ public class AnalysisCLI implements Runnable {
             else {
                 if (isURL(appPath)){
                     logger.info("Cloning source code from link!");
-                    RepoHandler repoHandler = new RepoHandler(appName, appPath);
+                    repoHandler = new RepoHandler(appName, appPath);
+                    if (fullClone)
+                        repoHandler.setFullClone(true);
                     try{
                         appPath = repoHandler.getOrClone();
                     }
@@ -78,16 +128,43 @@ public class AnalysisCLI implements Runnable {
                 else
                     logger.info("Loading source code from the given path!");
             }
+            AnalysisRecording recording = startRecording();
             try{
-                dataLoader.analyze(appName, appPath, !includeTest, isDistributed);
+                if (refresh) {
+                    Set<String> changedPaths = null;
+                    if (repoHandler != null)
+                        changedPaths = repoHandler.pullChanges(dataLoader.getAnalyzedCommit(appName));
+                    dataLoader.refresh(appName, appPath, !includeTest, isDistributed, changedPaths);
+                }
+                else
+                    dataLoader.analyze(appName, appPath, !includeTest, isDistributed);
+                if (repoHandler != null)
+                    dataLoader.setAnalyzedCommit(appName, repoHandler.getHeadCommit());
             }
             catch(IOException e) {
                 logger.info("Encountered error when analyzing the source code: \"" + e.getMessage() + "\"!");
             }
+            finally {
+                if (recording != null)
+                    recording.close();
+            }
         }
         dataLoader.restoreDefaultOutputPath();
     }
 
+    // the analysis runs without being recorded if the recording cannot be started
+    private AnalysisRecording startRecording() {
+        if (recordingPath == null)
+            return null;
+        try {
+            return new AnalysisRecording("analysis of " + appName, Paths.get(recordingPath));
+        }
+        catch (IOException|IllegalStateException|InvalidPathException e) {
+            logger.info("Failed to start the recording of " + appName + " due to error: \"" + e.getMessage() + "\"");
+            return null;
+        }
+    }
+
     private Boolean isURL(String pathOrURL) {
         String regex = "^(?:http|ftp)s?://" +                  // http:// or https://
                 "(?:(?:[A-Z0-9](?:[A-Z0-9-]{0,61}[A-Z0-9])?\\.)+(?:[A-Z]{2,6}\\.?|[A-Z0-9-]{2,}\\.?)|" +  // domain...
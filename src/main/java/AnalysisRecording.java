@@ -0,0 +1,53 @@
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+public class AnalysisRecording implements AutoCloseable {
+    // records one analysis with Java Flight Recorder into a file that can be opened in JDK Mission Control. The
+    // events of the JVM use the "default" settings of the JDK, which are meant to run in production, and the events of
+    // the analysis (see processors.AnalysisEvents) use their own defaults
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisRecording.class);
+    private final Recording recording;
+    private final Path destination;
+
+    public AnalysisRecording(String name, Path destination) throws IOException {
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration("default");
+        }
+        catch (ParseException e) {
+            throw new IOException("Failed to read the recording settings: " + e.getMessage(), e);
+        }
+        Path parent = destination.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        this.destination = destination;
+        recording = new Recording(configuration);
+        recording.setName(name);
+        recording.setToDisk(true);
+        recording.setDestination(destination);
+        recording.start();
+        logger.info("Recording " + name + " into " + destination + "!");
+    }
+
+    // the recording is written to its destination when it is stopped
+    @Override
+    public void close() {
+        try {
+            recording.stop();
+            logger.info("Saved the recording in " + destination);
+        }
+        catch (IllegalStateException e) {
+            logger.info("Failed to save the recording due to error: \"" + e.getMessage() + "\"");
+        }
+        finally {
+            recording.close();
+        }
+    }
+}
@@ -1,34 +1,84 @@
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
+import processors.Metrics;
+import processors.Settings;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 @CommandLine.Command(name = "start", mixinStandardHelpOptions = true, description = "Start the analysis server.")
 public class AnalysisServer implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(AnalysisServer.class);
+    private static final long shutdownTimeoutSeconds = 30;
     public void run() {
-        int portNumber = 50100;
-        String envVar = System.getenv("SERVICE_JAVA_ANALYSIS_PORT");
-        if (envVar!=null){
-            portNumber = Integer.parseInt(envVar);
-        }
+        int portNumber = Settings.getInt("SERVICE_JAVA_ANALYSIS_PORT", 50100, 0);
+        int metricsPort = Settings.getInt("METRICS_PORT", 0, 0);
         logger.info("Starting " + AnalysisServer.class.getName() + " on port " + portNumber + "!");
-        Server server = ServerBuilder.forPort(portNumber).addService(new AnalyzerImp()).build();
+        AnalyzerImp analyzer = new AnalyzerImp();
+        registerCacheMetrics(analyzer.getDataLoader().getResultCache());
+        Metrics.get().register(Metrics.QUEUED_ANALYSES, analyzer::getQueuedAnalyses);
+        Metrics.get().register(Metrics.RUNNING_ANALYSES, analyzer::getRunningAnalyses);
+        Server server = ServerBuilder.forPort(portNumber)
+                .addService(ServerInterceptors.intercept(analyzer, new MetricsInterceptor())).build();
         try {
             server.start();
         }
         catch (IOException e){
             logger.info("Failed to start server due to error: \"" + e.getMessage() + "\"");
         }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(server, analyzer), "server-shutdown"));
+        // the metrics endpoint is only started when a port is given, the analysis server runs without it if it
+        // cannot be started
+        MetricsServer metricsServer = null;
+        if (metricsPort > 0){
+            try {
+                metricsServer = new MetricsServer(metricsPort);
+                metricsServer.start();
+            }
+            catch (IOException e){
+                logger.info("Failed to start metrics endpoint due to error: \"" + e.getMessage() + "\"");
+            }
+        }
         try {
             server.awaitTermination();
         }
         catch (InterruptedException e2){
             ;
         }
+        if (metricsServer != null)
+            metricsServer.stop();
+        analyzer.shutdown();
         logger.info("Closing server!");
     }
+
+    // when the process is terminated the server stops taking new calls and gives the ongoing ones some time to
+    // finish, then the analyses and the streams that are left are stopped
+    private static void stop(Server server, AnalyzerImp analyzer) {
+        logger.info("Stopping server!");
+        server.shutdown();
+        try {
+            if (!server.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+                analyzer.shutdown();
+                server.shutdownNow();
+                server.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        analyzer.shutdown();
+    }
+
+    private static void registerCacheMetrics(ResultCache resultCache) {
+        Metrics metrics = Metrics.get();
+        metrics.register(Metrics.CACHE_HITS, resultCache::getHits);
+        metrics.register(Metrics.CACHE_MISSES, resultCache::getMisses);
+        metrics.register(Metrics.CACHE_EVICTIONS, resultCache::getEvictions);
+        metrics.register(Metrics.CACHE_USED_BYTES, resultCache::getUsedBytes);
+        metrics.register(Metrics.CACHE_MAX_BYTES, resultCache::getMaxBytes);
+    }
 }
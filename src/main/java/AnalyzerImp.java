@@ -1,79 +1,491 @@
 import com.decomp.analysis.*;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import processors.Metrics;
+import processors.Settings;
 
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class AnalyzerImp extends AnalyzerGrpc.AnalyzerImplBase {
     private DataLoader dataLoader;
+    private final ConcurrentHashMap<String, LiveAnalysis> analyses = new ConcurrentHashMap<>();
+    // every submitted analysis by job id, the finished ones are kept for an hour so that their status can be queried
+    private final ConcurrentHashMap<String, LiveAnalysis> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor analysisExecutor;
+    private final ThreadPoolExecutor streamingExecutor;
+    private static final int defaultPageSize = 100;
+    private static final int maxPageSize = 1000;
+    private static final long jobRetentionMs = 3600000;
     private static final Logger logger = LoggerFactory.getLogger(AnalyzerImp.class);
 
     public AnalyzerImp() {
         this.dataLoader = new DataLoader();
+        // the analyses run on their own bounded pool, the RPCs only wait for them without holding a thread
+        // (ANALYSIS_WORKERS is the number of services of a distributed application parsed in parallel by each of them)
+        int analysisJobs = Settings.getInt("ANALYSIS_JOBS", 2, 1);
+        int queueSize = Settings.getInt("ANALYSIS_QUEUE_SIZE", 16, 1);
+        analysisExecutor = new ThreadPoolExecutor(analysisJobs, analysisJobs, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize));
+        // every stream holds a thread while its client is not ready for more, so the streams beyond this pool are
+        // refused instead of piling up behind slow clients
+        int streamingThreads = Settings.getInt("STREAMING_THREADS", 64, 1);
+        streamingExecutor = new ThreadPoolExecutor(0, streamingThreads, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>());
     }
 
+    // cancels the analyses and stops the streams once the server is stopped
+    public void shutdown() {
+        jobs.values().forEach(LiveAnalysis::cancel);
+        analysisExecutor.shutdown();
+        streamingExecutor.shutdownNow();
+    }
+
+    public DataLoader getDataLoader() {
+        return dataLoader;
+    }
+
+    public int getQueuedAnalyses() {
+        return analysisExecutor.getQueue().size();
+    }
+
+    public int getRunningAnalyses() {
+        return analysisExecutor.getActiveCount();
+    }
+
+    // the reply is sent once the analysis finishes, from the thread that finished it
     @Override
     public void initRepo(AstRequest request, StreamObserver<AstReply> responseObserver) {
-        AstReply reply;
-        try{
-            loadApp(request);
-            reply = AstReply.newBuilder().setMessage("Loading Successful").build();
-        } catch (IOException e) {
-            reply = AstReply.newBuilder().setMessage("Loading Failed").build();
-        }
-        responseObserver.onNext(reply);
-        responseObserver.onCompleted();
+        LiveAnalysis analysis;
+        try {
+            analysis = startAnalysis(request);
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+            return;
+        }
+        if (analysis == null) {
+            responseObserver.onNext(AstReply.newBuilder().setMessage("Loading Successful").build());
+            responseObserver.onCompleted();
+            return;
+        }
+        analysis.getCompletion().whenComplete((result, error) -> {
+            responseObserver.onNext(AstReply.newBuilder()
+                    .setMessage((error == null) ? "Loading Successful" : "Loading Failed").build());
+            responseObserver.onCompleted();
+        });
     }
 
     @Override
-    public void getClasses(AstRequest request, StreamObserver<Class_> responseObserver) {
-        try{
-            loadApp(request);
-            List<Class_> classes = dataLoader.getClasses(request.getAppName());
-            for (Class_ class_: classes){
-                responseObserver.onNext(class_);
-            }
-        } catch (IOException e) {
+    public void submitAnalysis(AstRequest request, StreamObserver<JobStatus> responseObserver) {
+        LiveAnalysis analysis;
+        try {
+            analysis = startAnalysis(request);
+        } catch (StatusRuntimeException e) {
             responseObserver.onError(e);
+            return;
         }
+        if (analysis == null)
+            responseObserver.onNext(JobStatus.newBuilder().setAppName(request.getAppName())
+                    .setState(JobStatus.State.SUCCEEDED).build());
+        else
+            responseObserver.onNext(analysis.getStatus());
         responseObserver.onCompleted();
     }
 
     @Override
-    public void getMethods(AstRequest request, StreamObserver<Method_> responseObserver) {
-        try{
-            loadApp(request);
-            List<Method_> methods = dataLoader.getMethods(request.getAppName());
-            for (Method_ method_: methods){
-                responseObserver.onNext(method_);
-            }
-        } catch (IOException e) {
-            responseObserver.onError(e);
+    public void getJobStatus(JobRequest request, StreamObserver<JobStatus> responseObserver) {
+        LiveAnalysis job = jobs.get(request.getJobId());
+        if (job == null) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription("Job " + request.getJobId() + " not found")
+                    .asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(job.getStatus());
+        responseObserver.onCompleted();
+    }
+
+    // a queued job is removed from the queue right away while a running one stops at its next step
+    @Override
+    public void cancelJob(JobRequest request, StreamObserver<JobStatus> responseObserver) {
+        LiveAnalysis job = jobs.get(request.getJobId());
+        if (job == null) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription("Job " + request.getJobId() + " not found")
+                    .asRuntimeException());
+            return;
         }
+        if (job.cancel() && job.isFinished()) {
+            analysisExecutor.getQueue().removeIf(task -> (task instanceof AnalysisTask) &&
+                    (((AnalysisTask) task).analysis == job));
+            analyses.remove(job.getAppName(), job);
+            logger.info("Cancelled the queued analysis of " + job.getAppName());
+        }
+        responseObserver.onNext(job.getStatus());
         responseObserver.onCompleted();
     }
 
+    // the progress is followed from a separate thread like the streamed results, the last message tells whether the
+    // analysis succeeded
+    @Override
+    public void initRepoProgress(AstRequest request, StreamObserver<AnalysisProgress> responseObserver) {
+        FlowControlledConsumer<AnalysisProgress> consumer = new FlowControlledConsumer<>(responseObserver);
+        executeStreaming(responseObserver, () -> {
+            AnalysisProgress.Builder last = AnalysisProgress.newBuilder().setStage(AnalysisProgress.Stage.DONE);
+            try {
+                LiveAnalysis analysis = startAnalysis(request);
+                if (analysis != null) {
+                    analysis.followProgress(consumer);
+                    last.setElapsedMs(analysis.getElapsedMs());
+                    awaitAnalysis(analysis.getCompletion());
+                }
+                consumer.accept(last.setMessage("Loading Successful").build());
+                responseObserver.onCompleted();
+            } catch (IOException e) {
+                logger.debug("Analysis of " + request.getAppName() + " failed: " + e.getMessage());
+                try {
+                    consumer.accept(last.setStage(AnalysisProgress.Stage.FAILED).setMessage("Loading Failed: " +
+                            e.getMessage()).build());
+                    responseObserver.onCompleted();
+                } catch (StatusRuntimeException cancelled) {
+                    logger.debug("Progress of " + request.getAppName() + " cancelled by the client");
+                }
+            } catch (StatusRuntimeException e) {
+                if (consumer.isCancelled())
+                    logger.debug("Progress of " + request.getAppName() + " cancelled by the client");
+                else
+                    responseObserver.onError(e);
+            }
+        });
+    }
+
+    @Override
+    public void getClasses(AstRequest request, StreamObserver<Class_> responseObserver) {
+        stream(request, responseObserver, Class_.getDescriptor(), dataLoader::forEachClass,
+                LiveAnalysis::forEachClass);
+    }
+
+    @Override
+    public void getMethods(AstRequest request, StreamObserver<Method_> responseObserver) {
+        stream(request, responseObserver, Method_.getDescriptor(), dataLoader::forEachMethod,
+                LiveAnalysis::forEachMethod);
+    }
+
     @Override
     public void getInvocations(AstRequest request, StreamObserver<Invocation_> responseObserver) {
-        try{
-            loadApp(request);
-            List<Invocation_> invocations = dataLoader.getInvocations(request.getAppName());
-            for (Invocation_ invocation_: invocations){
-                responseObserver.onNext(invocation_);
+        stream(request, responseObserver, Invocation_.getDescriptor(), dataLoader::forEachInvocation, null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void getCompactClasses(AstRequest request, StreamObserver<CompactClasses> responseObserver) {
+        stream(request, responseObserver, Class_.getDescriptor(), dataLoader::forEachClass,
+                LiveAnalysis::forEachClass, consumer -> new CompactBatcher<Class_, CompactClasses>(consumer,
+                        CompactClass::newBuilder, (names, records) -> CompactClasses.newBuilder()
+                        .addAllNames(names).addAllClasses((List<CompactClass>) records).build()));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void getCompactMethods(AstRequest request, StreamObserver<CompactMethods> responseObserver) {
+        stream(request, responseObserver, Method_.getDescriptor(), dataLoader::forEachMethod,
+                LiveAnalysis::forEachMethod, consumer -> new CompactBatcher<Method_, CompactMethods>(consumer,
+                        CompactMethod::newBuilder, (names, records) -> CompactMethods.newBuilder()
+                        .addAllNames(names).addAllMethods((List<CompactMethod>) records).build()));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void getCompactInvocations(AstRequest request, StreamObserver<CompactInvocations> responseObserver) {
+        stream(request, responseObserver, Invocation_.getDescriptor(), dataLoader::forEachInvocation, null,
+                consumer -> new CompactBatcher<Invocation_, CompactInvocations>(consumer,
+                        CompactInvocation::newBuilder, (names, records) -> CompactInvocations.newBuilder()
+                        .addAllNames(names).addAllInvocations((List<CompactInvocation>) records).build()));
+    }
+
+    @Override
+    public void getContent(ContentRequest request, StreamObserver<ContentReply> responseObserver) {
+        String content;
+        try {
+            content = dataLoader.readContent(request.getAppName(), request.getSourceRange());
+        }
+        catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+        catch (IllegalStateException e) {
+            responseObserver.onError(Status.FAILED_PRECONDITION.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+        catch (IOException e) {
+            responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e)
+                    .asRuntimeException());
+            return;
+        }
+        if (content == null) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription("Application " + request.getAppName() +
+                    " was not analyzed").asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(ContentReply.newBuilder().setContent(content).build());
+        responseObserver.onCompleted();
+    }
+
+    private interface ResultSource<T> {
+        void forEach(String appName, Consumer<T> consumer) throws IOException;
+    }
+
+    private interface RecordSink<T> extends Consumer<T> {
+        default void flush() {
+        }
+    }
+
+    private interface BatchFactory<B> {
+        B build(List<String> names, List<? extends Message> records);
+    }
+
+    // sends the records in batches of compact messages along with the names they introduce in the name table of
+    // the stream
+    private static class CompactBatcher<T extends Message, B> implements RecordSink<T> {
+        private static final int batchSize = 128;
+        private final NameTable nameTable = new NameTable();
+        private final Consumer<B> consumer;
+        private final Supplier<Message.Builder> compactBuilders;
+        private final BatchFactory<B> batches;
+        private final List<Message> records = new ArrayList<>(batchSize);
+        private int sentNames = 0;
+
+        CompactBatcher(Consumer<B> consumer, Supplier<Message.Builder> compactBuilders, BatchFactory<B> batches) {
+            this.consumer = consumer;
+            this.compactBuilders = compactBuilders;
+            this.batches = batches;
+        }
+
+        @Override
+        public void accept(T record) {
+            records.add(nameTable.encode(record, compactBuilders.get()));
+            if (records.size() >= batchSize)
+                flush();
+        }
+
+        @Override
+        public void flush() {
+            if (records.isEmpty())
+                return;
+            B batch = batches.build(new ArrayList<>(nameTable.namesFrom(sentNames)), records);
+            sentNames = nameTable.size();
+            records.clear();
+            consumer.accept(batch);
+        }
+    }
+
+    private interface LiveSource<T> {
+        void forEach(LiveAnalysis analysis, Consumer<T> consumer) throws IOException;
+    }
+
+    // the results are sent from a separate thread that waits for the client to be ready for more instead of
+    // buffering the whole response
+    private <T extends Message> void stream(AstRequest request, StreamObserver<T> responseObserver,
+                                            Descriptors.Descriptor descriptor, ResultSource<T> source,
+                                            LiveSource<T> liveSource) {
+        stream(request, responseObserver, descriptor, source, liveSource, consumer -> consumer::accept);
+    }
+
+    // the encoder turns the records into the messages of the stream
+    private <T extends Message, M> void stream(AstRequest request, StreamObserver<M> responseObserver,
+                                               Descriptors.Descriptor descriptor, ResultSource<T> source,
+                                               LiveSource<T> liveSource, Function<Consumer<M>, RecordSink<T>> encoder) {
+        FieldProjection projection = null;
+        if (request.hasFieldMask() && (request.getFieldMask().getPathsCount() > 0)) {
+            try {
+                projection = FieldProjection.of(request.getFieldMask(), descriptor);
+            } catch (IllegalArgumentException e) {
+                responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+                return;
+            }
+        }
+        FlowControlledConsumer<M> consumer = new FlowControlledConsumer<>(responseObserver);
+        RecordSink<T> sink = encoder.apply(consumer);
+        // unrequested fields are dropped as soon as each message is loaded
+        final FieldProjection fieldProjection = projection;
+        Consumer<T> projectedConsumer = (fieldProjection == null) ? sink :
+                message -> sink.accept(fieldProjection.apply(message));
+        executeStreaming(responseObserver, () -> {
+            try {
+                LiveAnalysis analysis = startAnalysis(request);
+                boolean progressive = request.hasProgressive() && request.getProgressive();
+                if ((analysis != null) && analysis.isLive() && progressive && (liveSource != null)) {
+                    // the results are sent while they are parsed, without the invocations attached at the end, and
+                    // are sent again once saved with their invocations
+                    liveSource.forEach(analysis, projectedConsumer);
+                }
+                if (analysis != null)
+                    awaitAnalysis(analysis.getCompletion());
+                // only the streaming of the saved results is timed, not the analysis it may have waited for
+                Metrics.get().time(Metrics.RPC_STREAMING, () -> {
+                    source.forEach(request.getAppName(), projectedConsumer);
+                    sink.flush();
+                    responseObserver.onCompleted();
+                });
+            } catch (IOException e) {
+                responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e)
+                        .asRuntimeException());
+            } catch (StatusRuntimeException e) {
+                if (consumer.isCancelled())
+                    logger.debug("Streaming results of " + request.getAppName() + " cancelled by the client");
+                else
+                    responseObserver.onError(e);
+            } catch (RuntimeException e) {
+                responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e)
+                        .asRuntimeException());
             }
-        } catch (IOException e) {
+        });
+    }
+
+    @Override
+    public void queryClasses(QueryRequest request, StreamObserver<ClassPage> responseObserver) {
+        queryPage(request, responseObserver, Class_.getDescriptor(), dataLoader::queryClasses,
+                page -> ClassPage.newBuilder().addAllClasses(page.getRecords()).setNextCursor(page.getNextCursor())
+                        .build());
+    }
+
+    @Override
+    public void queryMethods(QueryRequest request, StreamObserver<MethodPage> responseObserver) {
+        queryPage(request, responseObserver, Method_.getDescriptor(), dataLoader::queryMethods,
+                page -> MethodPage.newBuilder().addAllMethods(page.getRecords()).setNextCursor(page.getNextCursor())
+                        .build());
+    }
+
+    @Override
+    public void queryInvocations(QueryRequest request, StreamObserver<InvocationPage> responseObserver) {
+        queryPage(request, responseObserver, Invocation_.getDescriptor(), dataLoader::queryInvocations,
+                page -> InvocationPage.newBuilder().addAllInvocations(page.getRecords())
+                        .setNextCursor(page.getNextCursor()).build());
+    }
+
+    private interface PageQuery<T> {
+        QueryIndex.Page<T> query(String appName, Map<String, String> filters, String cursor, int pageSize)
+                throws IOException;
+    }
+
+    // the page is read once the application is analyzed, from a streaming thread when it has to wait for the
+    // analysis so that the handler thread is not held meanwhile
+    private <T extends Message, P> void queryPage(QueryRequest request, StreamObserver<P> responseObserver,
+                                                  Descriptors.Descriptor descriptor, PageQuery<T> query,
+                                                  Function<QueryIndex.Page<T>, P> reply) {
+        AstRequest astRequest = request.getRequest();
+        FieldProjection projection = null;
+        LiveAnalysis analysis;
+        try {
+            if (astRequest.hasFieldMask() && (astRequest.getFieldMask().getPathsCount() > 0))
+                projection = FieldProjection.of(astRequest.getFieldMask(), descriptor);
+            analysis = startAnalysis(astRequest);
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        } catch (StatusRuntimeException e) {
             responseObserver.onError(e);
+            return;
         }
-        responseObserver.onCompleted();
+        final FieldProjection fieldProjection = projection;
+        Runnable sendPage = () -> {
+            try {
+                QueryIndex.Page<T> page = readPage(request, query, fieldProjection);
+                if (page == null) {
+                    responseObserver.onError(Status.NOT_FOUND.withDescription("Application " +
+                            astRequest.getAppName() + " not found").asRuntimeException());
+                    return;
+                }
+                responseObserver.onNext(reply.apply(page));
+                responseObserver.onCompleted();
+            } catch (IllegalArgumentException e) {
+                responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage())
+                        .asRuntimeException());
+            } catch (IOException | RuntimeException e) {
+                responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e)
+                        .asRuntimeException());
+            }
+        };
+        if (analysis == null)
+            sendPage.run();
+        else
+            analysis.getCompletion().whenComplete((result, error) -> {
+                if (error == null)
+                    executeStreaming(responseObserver, sendPage);
+                else
+                    responseObserver.onError(analysisStatus(error).asRuntimeException());
+            });
+    }
+
+    // the status sent when the analysis a call waited for did not succeed
+    private static Status analysisStatus(Throwable error) {
+        if (error instanceof CompletionException && (error.getCause() != null))
+            error = error.getCause();
+        if (error instanceof CancellationException)
+            return Status.CANCELLED.withDescription(error.getMessage()).withCause(error);
+        return Status.INTERNAL.withDescription("Analysis failed: " + error.getMessage()).withCause(error);
+    }
+
+    private void executeStreaming(StreamObserver<?> responseObserver, Runnable task) {
+        try {
+            streamingExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription("Too many results are being streamed")
+                    .asRuntimeException());
+        }
+    }
+
+    // returns null when the application was not analyzed
+    private <T extends Message> QueryIndex.Page<T> readPage(QueryRequest request, PageQuery<T> query,
+                                                            FieldProjection projection) throws IOException {
+        Map<String, String> filters = new HashMap<>();
+        if (request.hasPackagePrefix())
+            filters.put(QueryIndex.PACKAGE, request.getPackagePrefix());
+        if (request.hasServiceName())
+            filters.put(QueryIndex.SERVICE_NAME, request.getServiceName());
+        if (request.hasParentName())
+            filters.put(QueryIndex.PARENT_NAME, request.getParentName());
+        if (request.hasIsLocal())
+            filters.put(QueryIndex.IS_LOCAL, String.valueOf(request.getIsLocal()));
+        int pageSize = (request.getPageSize() <= 0) ? defaultPageSize : Math.min(request.getPageSize(), maxPageSize);
+        QueryIndex.Page<T> page = query.query(request.getRequest().getAppName(), filters, request.getCursor(),
+                pageSize);
+        if ((page == null) || (projection == null))
+            return page;
+        List<T> records = new ArrayList<>(page.getRecords().size());
+        for (T record : page.getRecords())
+            records.add(projection.apply(record));
+        return new QueryIndex.Page<>(records, page.getNextCursor());
     }
 
-    private void loadApp(AstRequest request) throws IOException {
+    // returns the ongoing analysis of the application, which is started if needed, or null when the saved results
+    // can be used as they are
+    private LiveAnalysis startAnalysis(AstRequest request) {
         String appName = request.getAppName();
         String appRepo = request.getAppRepo();
         boolean isDistributed = false;
@@ -82,20 +494,130 @@ public class AnalyzerImp extends AnalyzerGrpc.AnalyzerImplBase {
         boolean includeTest = false;
         if (request.hasIncludeTest())
             includeTest = request.getIncludeTest();
-        String envVar = System.getenv("INCLUDE_TEST");
-        includeTest = (includeTest|((envVar!=null)&&(envVar.equals("true"))));
-        if (!dataLoader.exists(appName)){
+        includeTest = (includeTest|Settings.getBoolean("INCLUDE_TEST"));
+        boolean refresh = request.hasRefresh() && request.getRefresh();
+        if (!refresh && dataLoader.exists(appName))
+            return null;
+        // concurrent requests for the same application follow a single analysis instead of starting their own
+        LiveAnalysis analysis = new LiveAnalysis(appName, !refresh);
+        LiveAnalysis inProgress = analyses.putIfAbsent(appName, analysis);
+        if (inProgress != null) {
+            logger.debug("Waiting for the ongoing analysis of " + appName);
+            return inProgress;
+        }
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> job.isFinished() && (now - job.getFinishedAt() > jobRetentionMs));
+        jobs.put(analysis.getId(), analysis);
+        final boolean ignoreTest = !includeTest;
+        final boolean distributed = isDistributed;
+        try {
+            analysisExecutor.execute(new AnalysisTask(analysis,
+                    () -> analyze(appName, appRepo, ignoreTest, distributed, refresh, analysis)));
+        }
+        catch (RejectedExecutionException e) {
+            analyses.remove(appName, analysis);
+            jobs.remove(analysis.getId());
+            analysis.finish(e);
+            throw Status.RESOURCE_EXHAUSTED.withDescription("Too many analyses are queued to analyze " + appName)
+                    .asRuntimeException();
+        }
+        return analysis;
+    }
+
+    private interface AnalysisRun {
+        void run() throws IOException;
+    }
+
+    // kept apart from the other tasks so that a cancelled job can be found in the queue
+    private class AnalysisTask implements Runnable {
+        private final LiveAnalysis analysis;
+        private final AnalysisRun run;
+
+        AnalysisTask(LiveAnalysis analysis, AnalysisRun run) {
+            this.analysis = analysis;
+            this.run = run;
+        }
+
+        @Override
+        public void run() {
+            // the job was cancelled while it was queued
+            if (!analysis.start())
+                return;
+            AnalysisRecording recording = startRecording(analysis.getAppName());
+            try {
+                run.run();
+                analysis.finish(null);
+            }
+            catch (Throwable e) {
+                analysis.finish(e);
+            }
+            finally {
+                if (recording != null)
+                    recording.close();
+                analyses.remove(analysis.getAppName(), analysis);
+            }
+        }
+    }
+
+    // every analysis is recorded into its own file when a directory is given for the flight recordings, the analysis
+    // runs without being recorded if the recording cannot be started
+    private AnalysisRecording startRecording(String appName) {
+        String recordingDir = System.getenv("JFR_RECORDING_DIR");
+        if ((recordingDir == null) || recordingDir.isEmpty())
+            return null;
+        try {
+            return new AnalysisRecording("analysis of " + appName,
+                    Paths.get(recordingDir, appName + "-" + System.currentTimeMillis() + ".jfr"));
+        }
+        catch (IOException|IllegalStateException e) {
+            logger.info("Failed to start the recording of " + appName + " due to error: \"" + e.getMessage() + "\"");
+            return null;
+        }
+    }
+
+    private void analyze(String appName, String appRepo, boolean ignoreTest, boolean isDistributed, boolean refresh,
+                         LiveAnalysis analysis) throws IOException {
+        if (refresh || !dataLoader.exists(appName)){
             String appPath;
+            RepoHandler repoHandler = null;
             if (isURL(appRepo)|appRepo.isEmpty()) {
                 logger.debug("Using the link '" + appRepo + "' to clone the repository.");
-                RepoHandler repoHandler = new RepoHandler(appName, appRepo);
+                repoHandler = new RepoHandler(appName, appRepo);
+                repoHandler.setProgressMonitor(new GitProgressMonitor(analysis));
                 appPath = repoHandler.getOrClone();
             }
             else {
                 logger.debug("Using the path '" + appRepo + "' to analyze the repository.");
                 appPath = appRepo;
             }
-            dataLoader.analyze(appName, appPath, !includeTest, isDistributed);
+            if (refresh) {
+                Set<String> changedPaths = null;
+                if (repoHandler != null)
+                    changedPaths = repoHandler.pullChanges(dataLoader.getAnalyzedCommit(appName));
+                dataLoader.refresh(appName, appPath, ignoreTest, isDistributed, changedPaths, analysis);
+            }
+            else
+                dataLoader.analyze(appName, appPath, ignoreTest, isDistributed, analysis);
+            if (repoHandler != null)
+                dataLoader.setAnalyzedCommit(appName, repoHandler.getHeadCommit());
+        }
+    }
+
+    private void awaitAnalysis(CompletableFuture<Void> analysis) throws IOException {
+        try {
+            analysis.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the analysis", e);
+        }
+        catch (CancellationException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Analysis failed: " + e.getCause().getMessage(), e.getCause());
         }
     }
 
@@ -0,0 +1,255 @@
+import com.decomp.analysis.Class_;
+import com.decomp.analysis.Invocation_;
+import com.decomp.analysis.Method_;
+import com.decomp.analysis.PhaseMetrics;
+import com.decomp.analysis.ScalingReport;
+import com.decomp.analysis.ScalingRun;
+import com.decomp.analysis.SyntheticConfig;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.util.JsonFormat;
+import org.apache.commons.lang3.tuple.Triple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+import processors.ASTParser;
+import processors.DistributedASTParser;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+@CommandLine.Command(name = "benchmark", mixinStandardHelpOptions = true,
+        description = "Generates synthetic applications of increasing size and measures their analysis, saving " +
+                "and loading.")
+public class BenchmarkCLI implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkCLI.class);
+    @CommandLine.Option(
+            names = {"-c", "--classes"}, split = ",", defaultValue = "100,200,400",
+            description = "number of classes of the generated applications (default: ${DEFAULT-VALUE}).")
+    private List<Integer> classes;
+
+    @CommandLine.Option(
+            names = {"-m", "--methods"}, split = ",", defaultValue = "10",
+            description = "number of methods per class (default: ${DEFAULT-VALUE}).")
+    private List<Integer> methodsPerClass;
+
+    @CommandLine.Option(
+            names = {"--depth"}, split = ",", defaultValue = "3",
+            description = "depth of the class hierarchies (default: ${DEFAULT-VALUE}).")
+    private List<Integer> hierarchyDepths;
+
+    @CommandLine.Option(
+            names = {"--calls"}, split = ",", defaultValue = "3",
+            description = "number of invocations per method (default: ${DEFAULT-VALUE}).")
+    private List<Integer> callsPerMethod;
+
+    @CommandLine.Option(
+            names = {"-s", "--services"}, defaultValue = "1",
+            description = "number of services, the application is a monolith when it is 1 (default: ${DEFAULT-VALUE}).")
+    private int services;
+
+    @CommandLine.Option(
+            names = {"--seed"}, defaultValue = "42",
+            description = "seed of the generated invocations (default: ${DEFAULT-VALUE}).")
+    private long seed;
+
+    @CommandLine.Option(
+            names = {"-w", "--workers"},
+            description = "maximum number of services analyzed in parallel for distributed applications.")
+    private int maxWorkers;
+
+    @CommandLine.Option(
+            names = {"-f", "--format"},
+            description = "storage format of the results: ${COMPLETION-CANDIDATES} (default: JSON).")
+    private DataLoader.StorageFormat storageFormat;
+
+    @CommandLine.Option(
+            names = {"--skip-text"},
+            description = "do not extract the source code and textual terms of the classes and methods.")
+    private boolean skipText;
+
+    @CommandLine.Option(
+            names = {"--lazy-content"},
+            description = "save the position of the classes and methods in their source files instead of their " +
+                    "source code.")
+    private boolean lazyContent;
+
+    @CommandLine.Option(
+            names = {"-o", "--output"}, defaultValue = "scaling-report.json",
+            description = "The path of the JSON report (default: ${DEFAULT-VALUE}).")
+    private String reportPath;
+
+    @CommandLine.Option(
+            names = {"--work-dir"},
+            description = "directory of the generated sources and results (default: a temporary directory).")
+    private String workDir;
+
+    @CommandLine.Option(
+            names = {"--keep"},
+            description = "keep the generated sources and results.")
+    private boolean keep;
+
+    private interface Phase<T> {
+        T run() throws IOException;
+    }
+
+    @Override
+    public void run() {
+        ScalingReport.Builder report = ScalingReport.newBuilder()
+                .setJavaVersion(System.getProperty("java.version"))
+                .setAvailableProcessors(Runtime.getRuntime().availableProcessors())
+                .setMaxHeapBytes(Runtime.getRuntime().maxMemory());
+        try {
+            Path workPath = (workDir == null) ? Files.createTempDirectory("synthetic-") : Paths.get(workDir);
+            for (int classCount : classes)
+                for (int methodCount : methodsPerClass)
+                    for (int depth : hierarchyDepths)
+                        for (int callCount : callsPerMethod) {
+                            SyntheticConfig config = SyntheticConfig.newBuilder().setClasses(classCount)
+                                    .setMethodsPerClass(methodCount).setHierarchyDepth(depth)
+                                    .setCallsPerMethod(callCount).setServices(services).setSeed(seed).build();
+                            report.addRuns(benchmark(config, workPath));
+                            // the report is saved after every run so that the finished runs are kept if one fails
+                            save(report.build());
+                        }
+            if ((workDir == null) && !keep)
+                delete(workPath);
+            logger.info("Saved the scaling report in " + reportPath);
+        }
+        catch (IOException|IllegalArgumentException e) {
+            logger.info("Encountered error when running the benchmark: \"" + e.getMessage() + "\"!");
+        }
+    }
+
+    private ScalingRun benchmark(SyntheticConfig config, Path workPath) throws IOException {
+        String appName = "synthetic_" + config.getClasses() + "_" + config.getMethodsPerClass() + "_" +
+                config.getHierarchyDepth() + "_" + config.getCallsPerMethod() + "_" + config.getServices();
+        Path sourcePath = workPath.resolve(appName);
+        Path outputPath = workPath.resolve("results");
+        delete(sourcePath);
+        delete(outputPath.resolve(appName));
+        logger.info("Benchmarking " + appName + "!");
+        DataLoader dataLoader = new DataLoader();
+        dataLoader.setOutputPath(outputPath.toString());
+        if (storageFormat != null)
+            dataLoader.setStorageFormat(storageFormat);
+        ScalingRun.Builder run = ScalingRun.newBuilder().setConfig(config)
+                .setStorageFormat(dataLoader.getStorageFormat().name());
+        SyntheticMonolith generator = new SyntheticMonolith(config.getClasses(), config.getMethodsPerClass(),
+                config.getHierarchyDepth(), config.getCallsPerMethod(), config.getServices(), config.getSeed());
+        measure("generate", run, () -> generator.generate(sourcePath), bytes -> bytes);
+        analyzeAndSave(appName, sourcePath, outputPath, dataLoader, run);
+        // the results are read from the saved files and not from the cache
+        dataLoader.getResultCache().invalidate("");
+        measure("load", run, () -> serializedSize(dataLoader.getClasses(appName)) +
+                serializedSize(dataLoader.getMethods(appName)) + serializedSize(dataLoader.getInvocations(appName)),
+                bytes -> bytes);
+        if (!keep) {
+            delete(sourcePath);
+            delete(outputPath.resolve(appName));
+        }
+        return run.build();
+    }
+
+    // the analysis results are no longer referenced once this returns so they are not part of the loading heap
+    private void analyzeAndSave(String appName, Path sourcePath, Path outputPath, DataLoader dataLoader,
+                                ScalingRun.Builder run) throws IOException {
+        SyntheticConfig config = run.getConfig();
+        Triple<List<Class_>, List<Method_>, List<Invocation_>> results = measure("analyze", run, () -> {
+            ASTParser astParser;
+            if (config.getServices() > 1)
+                astParser = new DistributedASTParser(sourcePath.toString(), appName, true, maxWorkers);
+            else
+                astParser = new ASTParser(sourcePath.toString(), appName, true);
+            astParser.setSkipText(skipText);
+            astParser.setLazyContent(lazyContent);
+            return astParser.analyze();
+        }, analysis -> serializedSize(analysis.getLeft()) + serializedSize(analysis.getMiddle()) +
+                serializedSize(analysis.getRight()));
+        run.setAnalyzedClasses(results.getLeft().size());
+        run.setAnalyzedMethods(results.getMiddle().size());
+        // the resolved invocations are held by their methods and classes, the other ones are saved apart
+        int invocationCount = results.getRight().size();
+        for (Method_ method_ : results.getMiddle())
+            invocationCount += method_.getInvocationsCount() + method_.getLocalInvocationsCount();
+        for (Class_ class_ : results.getLeft())
+            invocationCount += class_.getFieldCallsCount();
+        run.setAnalyzedInvocations(invocationCount);
+        measure("save", run, () -> {
+            dataLoader.save(results.getLeft(), results.getMiddle(), results.getRight(), appName);
+            return outputPath.resolve(appName);
+        }, BenchmarkCLI::size);
+    }
+
+    // the heap is collected before every phase so that its peak only includes what the phase allocated
+    private static <T> T measure(String name, ScalingRun.Builder run, Phase<T> phase, ToLongFunction<T> outputBytes)
+            throws IOException {
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans();
+        heapPools.removeIf(pool -> pool.getType() != MemoryType.HEAP);
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long cpuStart = processCpuTime();
+        long start = System.nanoTime();
+        T result = phase.run();
+        long wallTime = System.nanoTime() - start;
+        long cpuTime = processCpuTime() - cpuStart;
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools)
+            peakHeap += pool.getPeakUsage().getUsed();
+        PhaseMetrics metrics = PhaseMetrics.newBuilder().setPhase(name).setWallTimeMs(wallTime / 1000000)
+                .setCpuTimeMs((cpuStart < 0) ? -1 : cpuTime / 1000000).setPeakHeapBytes(peakHeap)
+                .setOutputBytes(outputBytes.applyAsLong(result)).build();
+        logger.info("Phase " + name + " took " + metrics.getWallTimeMs() + " ms (" + metrics.getCpuTimeMs() +
+                " ms of CPU) with a peak heap of " + (peakHeap >> 20) + " MB");
+        run.addPhases(metrics);
+        return result;
+    }
+
+    // -1 when the JVM does not expose it
+    private static long processCpuTime() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        return -1;
+    }
+
+    private static long serializedSize(List<? extends MessageLite> messages) {
+        long bytes = 0;
+        for (MessageLite message : messages)
+            bytes += message.getSerializedSize();
+        return bytes;
+    }
+
+    private static long size(Path path) {
+        try (Stream<Path> paths = Files.walk(path)) {
+            return paths.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+        catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path))
+            return;
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(p);
+        }
+    }
+
+    private void save(ScalingReport report) throws IOException {
+        Files.write(Paths.get(reportPath), JsonFormat.printer().includingDefaultValueFields().print(report)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+}
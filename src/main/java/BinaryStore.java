@@ -0,0 +1,122 @@
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class BinaryStore {
+    // records are stored as length-delimited protobuf messages and the index holds the offset of each record
+    // as a big-endian long
+    private static final int bufferSize = 1 << 16;
+    private static final long maxWindowSize = 1L << 30;
+
+    public static void write(Path dataPath, Path indexPath, Iterable<? extends MessageLite> messages)
+            throws IOException {
+        try (OutputStream data = new BufferedOutputStream(Channels.newOutputStream(FileChannel.open(dataPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)),
+                bufferSize);
+             DataOutputStream index = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(
+                     FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                             StandardOpenOption.TRUNCATE_EXISTING)), bufferSize))) {
+            long offset = 0;
+            for (MessageLite message : messages) {
+                index.writeLong(offset);
+                int size = message.getSerializedSize();
+                message.writeDelimitedTo(data);
+                offset += CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+            }
+        }
+    }
+
+    public static long[] readIndex(Path indexPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            LongBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+            long[] offsets = new long[buffer.remaining()];
+            buffer.get(offsets);
+            return offsets;
+        }
+    }
+
+    public static <T extends MessageLite> void read(Path dataPath, Path indexPath, Parser<T> parser,
+                                                    Consumer<? super T> consumer) throws IOException {
+        long[] offsets = readIndex(indexPath);
+        read(dataPath, offsets, 0, offsets.length, parser, consumer);
+    }
+
+    // reads the records [from, to) by mapping the data file in windows that always end on a record boundary
+    public static <T extends MessageLite> void read(Path dataPath, long[] offsets, int from, int to,
+                                                    Parser<T> parser, Consumer<? super T> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            read(channel, offsets, from, to, parser, consumer);
+        }
+    }
+
+    // the data file can be opened beforehand, it is then read even if it was replaced since then
+    public static <T extends MessageLite> void read(FileChannel channel, long[] offsets, int from, int to,
+                                                    Parser<T> parser, Consumer<? super T> consumer) throws IOException {
+        long fileSize = channel.size();
+        int first = from;
+        while (first < to) {
+            long windowStart = offsets[first];
+            int last = first + 1;
+            while ((last < to) && (recordEnd(offsets, last, fileSize) - windowStart <= maxWindowSize))
+                last++;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                    recordEnd(offsets, last - 1, fileSize) - windowStart);
+            CodedInputStream input = CodedInputStream.newInstance(window);
+            for (int i = first; i < last; i++)
+                consumer.accept(input.readMessage(parser, ExtensionRegistryLite.getEmptyRegistry()));
+            first = last;
+        }
+    }
+
+    public static <T extends MessageLite> void read(Path dataPath, Path indexPath, List<Integer> ordinals,
+                                                    Parser<T> parser, Consumer<? super T> consumer) throws IOException {
+        readRecords(dataPath, indexPath, ordinals, record -> consumer.accept(
+                CodedInputStream.newInstance(record).readMessage(parser, ExtensionRegistryLite.getEmptyRegistry())));
+    }
+
+    interface RecordReader {
+        void read(ByteBuffer record) throws IOException;
+    }
+
+    // reads only the given records using the offsets of an index, which works for any file whose index holds the
+    // offset of each record in order
+    static void readRecords(Path dataPath, Path indexPath, List<Integer> ordinals, RecordReader reader)
+            throws IOException {
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ);
+             FileChannel data = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            LongBuffer offsets = index.map(FileChannel.MapMode.READ_ONLY, 0, index.size()).asLongBuffer();
+            long fileSize = data.size();
+            for (int ordinal : ordinals) {
+                long start = offsets.get(ordinal);
+                long end = (ordinal + 1 < offsets.limit()) ? offsets.get(ordinal + 1) : fileSize;
+                ByteBuffer record = ByteBuffer.allocate((int) (end - start));
+                while (record.hasRemaining()) {
+                    if (data.read(record, start + record.position()) < 0)
+                        throw new IOException("Unexpected end of file in " + dataPath);
+                }
+                record.flip();
+                reader.read(record);
+            }
+        }
+    }
+
+    private static long recordEnd(long[] offsets, int i, long fileSize) {
+        return (i + 1 < offsets.length) ? offsets[i + 1] : fileSize;
+    }
+}
@@ -1,19 +1,44 @@
 import com.decomp.analysis.*;
-import com.google.protobuf.util.JsonFormat;
-import org.apache.commons.io.FileUtils;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import processors.ASTParser;
+import processors.AnalysisEvents;
 import processors.DistributedASTParser;
+import processors.Metrics;
+import processors.ResultSink;
+import processors.Settings;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class DataLoader {
 
@@ -21,88 +46,349 @@ public class DataLoader {
     private static final String defaultOutputPath = "./data/static_analysis/";
     private String outputPath = "./data/static_analysis/";
     private static final Logger logger = LoggerFactory.getLogger(DataLoader.class);
+    private static final Metrics metrics = Metrics.get();
     private static final String classFileName = "typeData.json";
     private static final String methodFileName = "methodData.json";
     private static final String invocationFileName = "invocationData.json";
+    private static final String classBinaryFileName = "typeData.pb";
+    private static final String methodBinaryFileName = "methodData.pb";
+    private static final String invocationBinaryFileName = "invocationData.pb";
+    private static final String classCompactFileName = "typeData.cpb";
+    private static final String methodCompactFileName = "methodData.cpb";
+    private static final String invocationCompactFileName = "invocationData.cpb";
+    private static final String nameTableFileName = "names.table";
+    private static final String indexExtension = ".idx";
+    private static final String classQueryFileName = "typeData.query";
+    private static final String methodQueryFileName = "methodData.query";
+    private static final String invocationQueryFileName = "invocationData.query";
+    private static final String versionFileName = "format.version";
+    private static final String manifestFileName = "sources.manifest";
+    private static final String commitFileName = "analyzed.commit";
+    private static final int formatVersion = 1;
+    private int maxWorkers = 0;
+    private StorageFormat storageFormat = StorageFormat.JSON;
+    private boolean skipText = false;
+    private boolean lazyContent = false;
+    private static final long defaultCacheSizeMB = 256;
+    private final ResultCache resultCache;
+    private final Map<String, QueryIndex> queryIndexes = new ConcurrentHashMap<>();
+    private final Map<String, SourceManifest> manifests = new ConcurrentHashMap<>();
+    private final Map<String, NameTable> nameTables = new ConcurrentHashMap<>();
+    // the results of an application are saved under its write lock and opened or read under its read lock, so that a
+    // reader never mixes the files of two savings (data files with the indexes or manifest of another one)
+    private final Map<String, ReadWriteLock> locks = new ConcurrentHashMap<>();
+    // incremented at every saving so that the records read meanwhile are not cached
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
 
-    private void save(List<Class_> classes, List<Method_> methods, List<Invocation_> invocations,
-                      String appName) throws IOException{
-        logger.info("Converting class data to JSON");
-        ClassContainer.Builder classContainer = ClassContainer.newBuilder().addAllClasses(classes);
-        String jsonClasses = JsonFormat.printer().includingDefaultValueFields().print(classContainer);
-//        StringBuilder jsonClassesBuilder = new StringBuilder("[\n");
-//        int i = 0;
-//        for (Class_ class_: classes){
-//            if (i!=0)
-//                jsonClassesBuilder.append(",\n");
-//            jsonClassesBuilder.append(JsonFormat.printer().print(class_.toBuilder()));
-//            i++;
-//        }
-//        jsonClassesBuilder.append(']');
-//        String jsonClasses = jsonClassesBuilder.toString();
-        logger.info("Converting method data to JSON");
-        MethodContainer.Builder methodContainer = MethodContainer.newBuilder().addAllMethods(methods);
-        String jsonMethods = JsonFormat.printer().includingDefaultValueFields().print(methodContainer);
-//        StringBuilder jsonMethodsBuilder = new StringBuilder("[\n");
-//        i = 0;
-//        for (Method_ method_: methods){
-//            if (i!=0)
-//                jsonMethodsBuilder.append(",\n");
-//            jsonMethodsBuilder.append(JsonFormat.printer().print(method_.toBuilder()));
-//            i++;
-//        }
-//        jsonMethodsBuilder.append(']');
-//        String jsonMethods = jsonMethodsBuilder.toString();
-        logger.info("Converting failed invocation match data to JSON");
-        InvocationContainer.Builder invocationContainer = InvocationContainer.newBuilder().addAllInvocations(
-                invocations);
-        String jsonInvocations = JsonFormat.printer().includingDefaultValueFields().print(invocationContainer);
-//        StringBuilder jsonInvocationsBuilder = new StringBuilder("[\n");
-//        i = 0;
-//        for (Invocation_ invocation_: invocations){
-//            if (i!=0)
-//                jsonInvocationsBuilder.append(",\n");
-//            jsonInvocationsBuilder.append(JsonFormat.printer().print(invocation_.toBuilder()));
-//            i++;
-//        }
-//        jsonInvocationsBuilder.append(']');
-//        String jsonInvocations = jsonInvocationsBuilder.toString();
+    public enum StorageFormat {
+        JSON,
+        BINARY,
+        COMPACT
+    }
+
+    public DataLoader() {
+        storageFormat = Settings.getEnum("STORAGE_FORMAT", StorageFormat.class, storageFormat);
+        long cacheSizeMB = Settings.getLong("CACHE_SIZE_MB", defaultCacheSizeMB, 0);
+        resultCache = new ResultCache(cacheSizeMB * 1024 * 1024);
+        skipText = Settings.getBoolean("SKIP_TEXT");
+        lazyContent = Settings.getBoolean("LAZY_CONTENT");
+    }
+
+    // forwards the loaded messages and keeps them for the cache as long as they fit in it
+    private static class CachingConsumer<T extends MessageLite> implements Consumer<T> {
+        private final Consumer<T> consumer;
+        private final long maxBytes;
+        private List<T> messages = new ArrayList<>();
+        private long bytes = 0;
+        private long count = 0;
+
+        CachingConsumer(Consumer<T> consumer, long maxBytes) {
+            this.consumer = consumer;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void accept(T message) {
+            count++;
+            if (messages != null) {
+                bytes += message.getSerializedSize();
+                if (bytes <= maxBytes)
+                    messages.add(message);
+                else
+                    messages = null;
+            }
+            consumer.accept(message);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        void store(ResultCache cache, String key) {
+            if (messages != null)
+                cache.put(key, messages, bytes);
+        }
+    }
+
+    private String cacheKey(String appName) {
+        return Paths.get(outputPath, appName).toAbsolutePath().normalize() + "#";
+    }
+
+    private ReadWriteLock lock(String appName) {
+        return locks.computeIfAbsent(cacheKey(appName), key -> new ReentrantReadWriteLock());
+    }
+
+    private void invalidate(String appName) {
+        String key = cacheKey(appName);
+        resultCache.invalidate(key);
+        queryIndexes.keySet().removeIf(indexKey -> indexKey.startsWith(key));
+        manifests.remove(key);
+        nameTables.remove(key);
+    }
+
+    private interface ResultLoader<T> {
+        void forEach(String appName, Consumer<T> consumer) throws IOException;
+    }
+
+    // where each kind of result is stored and which of its fields can be queried
+    private static class ResultKind<T extends Message> {
+        private final String name;
+        private final String jsonFileName;
+        private final String binaryFileName;
+        private final String compactFileName;
+        private final String queryFileName;
+        private final Parser<T> parser;
+        private final Supplier<Message.Builder> builders;
+        private final Parser<? extends Message> compactParser;
+        private final Supplier<Message.Builder> compactBuilders;
+        private final Map<String, Function<T, String>> keys;
+
+        ResultKind(String name, String jsonFileName, String binaryFileName, String compactFileName,
+                   String queryFileName, Parser<T> parser, Supplier<Message.Builder> builders,
+                   Parser<? extends Message> compactParser, Supplier<Message.Builder> compactBuilders,
+                   Map<String, Function<T, String>> keys) {
+            this.name = name;
+            this.jsonFileName = jsonFileName;
+            this.binaryFileName = binaryFileName;
+            this.compactFileName = compactFileName;
+            this.queryFileName = queryFileName;
+            this.parser = parser;
+            this.builders = builders;
+            this.compactParser = compactParser;
+            this.compactBuilders = compactBuilders;
+            this.keys = keys;
+        }
+
+        String fileName(StorageFormat format) {
+            if (format == StorageFormat.BINARY)
+                return binaryFileName;
+            if (format == StorageFormat.COMPACT)
+                return compactFileName;
+            return jsonFileName;
+        }
+    }
+
+    private static final ResultKind<Class_> classKind = new ResultKind<>("classes", classFileName,
+            classBinaryFileName, classCompactFileName, classQueryFileName, Class_.parser(), Class_::newBuilder,
+            CompactClass.parser(), CompactClass::newBuilder, Map.of(
+            QueryIndex.PACKAGE, class_ -> QueryIndex.packageOf(class_.getFullName()),
+            QueryIndex.SERVICE_NAME, class_ -> class_.hasServiceName() ? class_.getServiceName() : null));
+    private static final ResultKind<Method_> methodKind = new ResultKind<>("methods", methodFileName,
+            methodBinaryFileName, methodCompactFileName, methodQueryFileName, Method_.parser(), Method_::newBuilder,
+            CompactMethod.parser(), CompactMethod::newBuilder, Map.of(
+            QueryIndex.PACKAGE, method_ -> QueryIndex.packageOf(method_.getParentName()),
+            QueryIndex.SERVICE_NAME, method_ -> method_.hasServiceName() ? method_.getServiceName() : null,
+            QueryIndex.PARENT_NAME, Method_::getParentName,
+            QueryIndex.IS_LOCAL, method_ -> method_.hasIsLocal() ? String.valueOf(method_.getIsLocal()) : null));
+    private static final ResultKind<Invocation_> invocationKind = new ResultKind<>("invocations",
+            invocationFileName, invocationBinaryFileName, invocationCompactFileName, invocationQueryFileName,
+            Invocation_.parser(), Invocation_::newBuilder, CompactInvocation.parser(), CompactInvocation::newBuilder,
+            Map.of(
+            QueryIndex.PACKAGE, invocation_ -> QueryIndex.packageOf(invocation_.getInvokingObject()),
+            QueryIndex.SERVICE_NAME, invocation_ -> invocation_.hasServiceName() ? invocation_.getServiceName() : null,
+            QueryIndex.PARENT_NAME, Invocation_::getInvokingObject,
+            QueryIndex.IS_LOCAL, invocation_ -> String.valueOf(invocation_.getLocal())));
+
+    // package-private so that the benchmark command can measure it on its own
+    void save(List<Class_> classes, List<Method_> methods, List<Invocation_> invocations,
+              String appName) throws IOException{
+        AnalysisEvents.ResultsSaved event = new AnalysisEvents.ResultsSaved();
+        event.begin();
         try {
-            String savePath = Paths.get(outputPath, appName, classFileName).toString();
-            logger.info("Saving type data in " + savePath);
-            File file = new File(savePath);
-            file.getParentFile().mkdirs();
-            file.createNewFile();
-            PrintWriter out = new PrintWriter(file);
-            out.println(jsonClasses);
-            out.close();
-            savePath = Paths.get(outputPath, appName, methodFileName).toString();
-            logger.info("Saving method data in " + savePath);
-            file = new File(savePath);
-            file.getParentFile().mkdirs();
-            file.createNewFile();
-            out = new PrintWriter(file);
-            out.println(jsonMethods);
-            out.close();
-            savePath = Paths.get(outputPath, appName, invocationFileName).toString();
-            logger.info("Saving invocation data in " + savePath);
-            file = new File(savePath);
-            file.getParentFile().mkdirs();
-            file.createNewFile();
-            out = new PrintWriter(file);
-            out.println(jsonInvocations);
-            out.close();
+            metrics.time(Metrics.DISK_WRITE, () -> {
+                Files.createDirectories(Paths.get(outputPath, appName));
+                if (storageFormat == StorageFormat.BINARY)
+                    saveBinary(classes, methods, invocations, appName);
+                else if (storageFormat == StorageFormat.COMPACT)
+                    saveCompact(classes, methods, invocations, appName);
+                else
+                    saveJson(classes, methods, invocations, appName);
+                saveQueryIndexes(classes, methods, invocations, appName);
+                // the version marker is written last so that incomplete results are never considered as existing
+                Path versionPath = Paths.get(outputPath, appName, versionFileName);
+                writeAtomically(paths -> Files.write(paths[0],
+                        (storageFormat.name() + " " + formatVersion).getBytes(StandardCharsets.UTF_8)), versionPath);
+            });
         }
         catch (IOException e){
-            logger.error("Failed to save JSON data");
+            logger.error("Failed to save " + storageFormat + " data");
             throw e;
         }
+        if (event.shouldCommit()) {
+            event.appName = appName;
+            event.format = storageFormat.name();
+            event.classes = classes.size();
+            event.methods = methods.size();
+            event.invocations = invocations.size();
+            event.commit();
+        }
+    }
+
+    private void saveJson(List<Class_> classes, List<Method_> methods, List<Invocation_> invocations,
+                          String appName) throws IOException{
+        Path savePath = Paths.get(outputPath, appName, classFileName);
+        logger.info("Saving type data in " + savePath);
+        writeAtomically(paths -> JsonStreamWriter.write(paths[0], "classes", classes, paths[1]), savePath,
+                indexPath(savePath));
+        savePath = Paths.get(outputPath, appName, methodFileName);
+        logger.info("Saving method data in " + savePath);
+        writeAtomically(paths -> JsonStreamWriter.write(paths[0], "methods", methods, paths[1]), savePath,
+                indexPath(savePath));
+        savePath = Paths.get(outputPath, appName, invocationFileName);
+        logger.info("Saving invocation data in " + savePath);
+        writeAtomically(paths -> JsonStreamWriter.write(paths[0], "invocations", invocations, paths[1]), savePath,
+                indexPath(savePath));
+    }
+
+    private void saveBinary(List<Class_> classes, List<Method_> methods, List<Invocation_> invocations,
+                            String appName) throws IOException{
+        Path savePath = Paths.get(outputPath, appName, classBinaryFileName);
+        logger.info("Saving type data in " + savePath);
+        writeAtomically(paths -> BinaryStore.write(paths[0], paths[1], classes), savePath, indexPath(savePath));
+        savePath = Paths.get(outputPath, appName, methodBinaryFileName);
+        logger.info("Saving method data in " + savePath);
+        writeAtomically(paths -> BinaryStore.write(paths[0], paths[1], methods), savePath, indexPath(savePath));
+        savePath = Paths.get(outputPath, appName, invocationBinaryFileName);
+        logger.info("Saving invocation data in " + savePath);
+        writeAtomically(paths -> BinaryStore.write(paths[0], paths[1], invocations), savePath, indexPath(savePath));
+    }
+
+    // the records are saved like in the binary format but with their names replaced by indexes in a table shared by
+    // the whole application. The table is only valid for the data saved with it, which is why they are saved under
+    // the write lock of the application and decoded under its read lock
+    private void saveCompact(List<Class_> classes, List<Method_> methods, List<Invocation_> invocations,
+                             String appName) throws IOException{
+        Path classPath = Paths.get(outputPath, appName, classCompactFileName);
+        Path methodPath = Paths.get(outputPath, appName, methodCompactFileName);
+        Path invocationPath = Paths.get(outputPath, appName, invocationCompactFileName);
+        Path tablePath = Paths.get(outputPath, appName, nameTableFileName);
+        logger.info("Saving compact data in " + Paths.get(outputPath, appName));
+        writeAtomically(paths -> {
+            NameTable nameTable = new NameTable();
+            BinaryStore.write(paths[0], paths[1], encoded(classes, nameTable, CompactClass::newBuilder));
+            BinaryStore.write(paths[2], paths[3], encoded(methods, nameTable, CompactMethod::newBuilder));
+            BinaryStore.write(paths[4], paths[5], encoded(invocations, nameTable, CompactInvocation::newBuilder));
+            nameTable.save(paths[6]);
+            logger.info("Saved " + nameTable.size() + " distinct names for Application " + appName + " !");
+        }, classPath, indexPath(classPath), methodPath, indexPath(methodPath), invocationPath,
+                indexPath(invocationPath), tablePath);
+    }
+
+    private static Iterable<Message> encoded(List<? extends Message> messages, NameTable nameTable,
+                                             Supplier<Message.Builder> compactBuilders) {
+        return () -> messages.stream().map(message -> nameTable.encode(message, compactBuilders.get())).iterator();
+    }
+
+    // the query indexes refer to the records by their position in the data files saved with them
+    private void saveQueryIndexes(List<Class_> classes, List<Method_> methods, List<Invocation_> invocations,
+                                  String appName) throws IOException {
+        logger.info("Saving query indexes for Application " + appName + " !");
+        writeAtomically(paths -> QueryIndex.build(classes, classKind.keys).save(paths[0]),
+                Paths.get(outputPath, appName, classQueryFileName));
+        writeAtomically(paths -> QueryIndex.build(methods, methodKind.keys).save(paths[0]),
+                Paths.get(outputPath, appName, methodQueryFileName));
+        writeAtomically(paths -> QueryIndex.build(invocations, invocationKind.keys).save(paths[0]),
+                Paths.get(outputPath, appName, invocationQueryFileName));
+    }
+
+    private interface PathWriter {
+        void write(Path[] paths) throws IOException;
+    }
+
+    // writes into temporary files next to the targets and renames them so that readers never see partial files
+    private static void writeAtomically(PathWriter writer, Path... targets) throws IOException {
+        Path[] temps = new Path[targets.length];
+        try {
+            for (int i = 0; i < targets.length; i++)
+                temps[i] = targets[i].resolveSibling(targets[i].getFileName() + "." + UUID.randomUUID() + ".tmp");
+            writer.write(temps);
+            for (int i = 0; i < targets.length; i++) {
+                try {
+                    Files.move(temps[i], targets[i], StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+                catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temps[i], targets[i], StandardCopyOption.REPLACE_EXISTING);
+                }
+                metrics.count(Metrics.BYTES_WRITTEN, Files.size(targets[i]));
+            }
+        }
+        finally {
+            for (Path temp : temps) {
+                if (temp != null)
+                    Files.deleteIfExists(temp);
+            }
+        }
     }
 
+    private static Path indexPath(Path dataPath) {
+        return dataPath.resolveSibling(dataPath.getFileName() + indexExtension);
+    }
+
+    public StorageFormat getStoredFormat(String appName) throws IOException {
+        // results saved before the version marker was introduced are in JSON
+        Path versionPath = Paths.get(outputPath, appName, versionFileName);
+        if (!Files.exists(versionPath))
+            return StorageFormat.JSON;
+        String[] version = new String(Files.readAllBytes(versionPath), StandardCharsets.UTF_8).trim().split(" ");
+        if ((version.length > 1) && (Integer.parseInt(version[1]) > formatVersion))
+            throw new IOException("Unsupported storage format version \"" + version[1] + "\" for " + appName);
+        return StorageFormat.valueOf(version[0]);
+    }
+
+    // the JSON results saved before the version marker was introduced have no offset index, so results with one but
+    // without the marker were not completely saved
+    private boolean isPartiallySavedJson(String appName) {
+        if (Files.exists(Paths.get(outputPath, appName, versionFileName)))
+            return false;
+        for (String fileName : Arrays.asList(classFileName, methodFileName, invocationFileName))
+            if (Files.exists(Paths.get(outputPath, appName, fileName + indexExtension)))
+                return true;
+        return false;
+    }
 
     public boolean exists(String appName){
+        List<String> files;
+        try {
+            StorageFormat format = getStoredFormat(appName);
+            if (format == StorageFormat.BINARY)
+                files = Arrays.asList(classBinaryFileName, methodBinaryFileName, invocationBinaryFileName,
+                        classBinaryFileName + indexExtension, methodBinaryFileName + indexExtension,
+                        invocationBinaryFileName + indexExtension);
+            else if (format == StorageFormat.COMPACT)
+                files = Arrays.asList(classCompactFileName, methodCompactFileName, invocationCompactFileName,
+                        classCompactFileName + indexExtension, methodCompactFileName + indexExtension,
+                        invocationCompactFileName + indexExtension, nameTableFileName);
+            else if (isPartiallySavedJson(appName))
+                return false;
+            else
+                files = Arrays.asList(classFileName, methodFileName, invocationFileName);
+        }
+        catch (IOException|IllegalArgumentException e){
+            logger.error("Failed to read the storage format of " + appName + ": \"" + e.getMessage() + "\"");
+            return false;
+        }
         boolean itExists = true;
-        List<String> files = Arrays.asList(classFileName, methodFileName, invocationFileName);
         int i = 0;
         while (itExists&&(i<files.size())){
             String fileName = files.get(i);
@@ -125,62 +411,470 @@ public class DataLoader {
     }
 
     public boolean analyze(String appName, String appPath, boolean ignoreTest, boolean isDistributed) throws IOException
+    {
+        return analyze(appName, appPath, ignoreTest, isDistributed, null);
+    }
+
+    // the sink receives the types and methods while they are parsed, the complete results are saved at the end
+    public boolean analyze(String appName, String appPath, boolean ignoreTest, boolean isDistributed,
+                           ResultSink resultSink) throws IOException
     {
         if (exists(appName)){
             logger.info("Application " + appName + " exists! Exiting process.");
             return false;
         }
         logger.info("Application " + appName + " not found! Starting analysis.");
-        ASTParser astParser;
-        if (isDistributed)
-            astParser = new DistributedASTParser(appPath, appName, ignoreTest);
+        analyzeAll(appName, appPath, ignoreTest, isDistributed, resultSink);
+        return true;
+    }
+
+    private void analyzeAll(String appName, String appPath, boolean ignoreTest, boolean isDistributed,
+                            ResultSink resultSink) throws IOException {
+        metrics.time(Metrics.ANALYSIS, () -> {
+            ASTParser astParser;
+            if (isDistributed)
+                astParser = new DistributedASTParser(appPath, appName, ignoreTest, maxWorkers);
+            else
+                astParser = new ASTParser(appPath, appName, ignoreTest);
+            astParser.setSkipText(skipText);
+            astParser.setLazyContent(lazyContent);
+            astParser.setResultSink(resultSink);
+            List<String> sourceFiles = astParser.findSourceFiles();
+            reportProgress(resultSink, AnalysisProgress.Stage.DISCOVERING_SOURCES, "source files", sourceFiles.size(),
+                    sourceFiles.size());
+            SourceManifest manifest = SourceManifest.compute(sourceFiles);
+            Triple<List<Class_>, List<Method_>, List<Invocation_>> analysisResults = astParser.analyze();
+            List<Class_> classes = analysisResults.getLeft();
+            List<Method_> methods = analysisResults.getMiddle();
+            List<Invocation_> invocations = analysisResults.getRight();
+            publish(classes, methods, invocations, manifest, appName, resultSink);
+        });
+    }
+
+    public boolean refresh(String appName, String appPath, boolean ignoreTest, boolean isDistributed)
+            throws IOException {
+        return refresh(appName, appPath, ignoreTest, isDistributed, null);
+    }
+
+    // changedPaths can be given when the modified files are already known, otherwise every source file is rehashed
+    public boolean refresh(String appName, String appPath, boolean ignoreTest, boolean isDistributed,
+                           Set<String> changedPaths) throws IOException {
+        return refresh(appName, appPath, ignoreTest, isDistributed, changedPaths, null);
+    }
+
+    // the sink receives the progress and the reprocessed types and methods
+    public boolean refresh(String appName, String appPath, boolean ignoreTest, boolean isDistributed,
+                           Set<String> changedPaths, ResultSink resultSink) throws IOException {
+        if (!exists(appName))
+            return analyze(appName, appPath, ignoreTest, isDistributed, resultSink);
+        Path manifestPath = Paths.get(outputPath, appName, manifestFileName);
+        if (isDistributed || !Files.exists(manifestPath)){
+            // distributed applications and results without a manifest are always analyzed from scratch
+            logger.info("Re-analyzing application " + appName + " from scratch!");
+            analyzeAll(appName, appPath, ignoreTest, isDistributed, resultSink);
+            return true;
+        }
+        ASTParser astParser = new ASTParser(appPath, appName, ignoreTest);
+        astParser.setSkipText(skipText);
+        astParser.setLazyContent(lazyContent);
+        astParser.setResultSink(resultSink);
+        SourceManifest previousManifest = SourceManifest.load(manifestPath);
+        List<String> sourceFiles = astParser.findSourceFiles();
+        reportProgress(resultSink, AnalysisProgress.Stage.DISCOVERING_SOURCES, "source files", sourceFiles.size(),
+                sourceFiles.size());
+        SourceManifest manifest;
+        if (changedPaths == null)
+            manifest = SourceManifest.compute(sourceFiles);
         else
-            astParser = new ASTParser(appPath, appName, ignoreTest);
-        Triple<List<Class_>, List<Method_>, List<Invocation_>> analysisResults = astParser.analyze();
-        List<Class_> classes = analysisResults.getLeft();
-        List<Method_> methods = analysisResults.getMiddle();
-        List<Invocation_> invocations = analysisResults.getRight();
-        logger.info("Saving data for Application " + appName + " !");
-        save(classes, methods, invocations, appName);
+            manifest = previousManifest.update(changedPaths, sourceFiles);
+        Set<String> changedFiles = manifest.changedFiles(previousManifest);
+        Set<String> removedFiles = manifest.removedFiles(previousManifest);
+        if (changedFiles.isEmpty() && removedFiles.isEmpty()){
+            logger.info("Application " + appName + " is up to date!");
+            return false;
+        }
+        logger.info("Found " + changedFiles.size() + " changed and " + removedFiles.size() +
+                " removed files for Application " + appName + " !");
+        // only the refreshes that find changes are timed, from the re-analysis of the changed files
+        metrics.time(Metrics.ANALYSIS,
+                () -> refreshChanges(appName, astParser, manifest, changedFiles, removedFiles, resultSink));
         return true;
     }
 
+    // re-analyzes the changed files and saves their results in place of the stored ones
+    private void refreshChanges(String appName, ASTParser astParser, SourceManifest manifest, Set<String> changedFiles,
+                                Set<String> removedFiles, ResultSink resultSink) throws IOException {
+        List<Class_> previousClasses = getClasses(appName);
+        Triple<List<Class_>, List<Method_>, List<Invocation_>> analysisResults =
+                astParser.analyze(changedFiles, previousClasses);
+        // results of the reprocessed and removed files replace the stored ones
+        Set<String> replacedFiles = new HashSet<>(astParser.getProcessedFiles());
+        replacedFiles.addAll(removedFiles);
+        Set<String> replacedTypes = new HashSet<>();
+        List<Class_> classes = new ArrayList<>();
+        for (Class_ class_ : previousClasses){
+            if (replacedFiles.contains(Paths.get(class_.getFilePath()).toAbsolutePath().normalize().toString()))
+                replacedTypes.add(class_.getFullName());
+            else
+                classes.add(class_);
+        }
+        classes.addAll(analysisResults.getLeft());
+        List<Method_> methods = new ArrayList<>();
+        forEachMethod(appName, method_ -> {
+            if (!replacedTypes.contains(method_.getParentName()))
+                methods.add(method_);
+        });
+        methods.addAll(analysisResults.getMiddle());
+        List<Invocation_> invocations = new ArrayList<>();
+        forEachInvocation(appName, invocation_ -> {
+            if (!replacedTypes.contains(invocation_.getInvokingObject()))
+                invocations.add(invocation_);
+        });
+        invocations.addAll(analysisResults.getRight());
+        publish(classes, methods, invocations, manifest, appName, resultSink);
+    }
+
+    // replaces the saved results and manifest of the application at once for the readers, which wait meanwhile
+    private void publish(List<Class_> classes, List<Method_> methods, List<Invocation_> invocations,
+                         SourceManifest manifest, String appName, ResultSink resultSink) throws IOException {
+        logger.info("Saving data for Application " + appName + " !");
+        reportProgress(resultSink, AnalysisProgress.Stage.SAVING, "results", 0, 2);
+        Lock lock = lock(appName).writeLock();
+        lock.lock();
+        try {
+            save(classes, methods, invocations, appName);
+            reportProgress(resultSink, AnalysisProgress.Stage.SAVING, "manifest", 1, 2);
+            saveManifest(manifest, appName);
+            invalidate(appName);
+            generations.merge(cacheKey(appName), 1L, Long::sum);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private static void reportProgress(ResultSink resultSink, AnalysisProgress.Stage stage, String task, long completed,
+                                       long total) {
+        if (resultSink != null)
+            resultSink.progress(stage, task, completed, total);
+    }
+
+    public String getAnalyzedCommit(String appName) throws IOException {
+        Path commitPath = Paths.get(outputPath, appName, commitFileName);
+        if (!Files.exists(commitPath))
+            return null;
+        return new String(Files.readAllBytes(commitPath), StandardCharsets.UTF_8).trim();
+    }
+
+    public void setAnalyzedCommit(String appName, String commit) throws IOException {
+        if (commit == null)
+            return;
+        Path commitPath = Paths.get(outputPath, appName, commitFileName);
+        writeAtomically(paths -> Files.write(paths[0], commit.getBytes(StandardCharsets.UTF_8)), commitPath);
+    }
+
+    private void saveManifest(SourceManifest manifest, String appName) throws IOException {
+        Path manifestPath = Paths.get(outputPath, appName, manifestFileName);
+        writeAtomically(paths -> manifest.save(paths[0]), manifestPath);
+    }
+
+    // reads the source code of a class or method from the analyzed files, which are only read when they are part of
+    // the analysis and did not change since then. Returns null when the application was not analyzed
+    public String readContent(String appName, SourceRange sourceRange) throws IOException {
+        String key = cacheKey(appName);
+        SourceManifest manifest = manifests.get(key);
+        if (manifest == null) {
+            Lock lock = lock(appName).readLock();
+            lock.lock();
+            try {
+                Path manifestPath = Paths.get(outputPath, appName, manifestFileName);
+                if (!Files.exists(manifestPath))
+                    return null;
+                manifest = SourceManifest.load(manifestPath);
+                manifests.put(key, manifest);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        String filePath = sourceRange.getFilePath();
+        String hash = manifest.getHash(filePath);
+        if (hash == null)
+            throw new IllegalArgumentException("\"" + filePath + "\" is not a source file of Application " + appName);
+        byte[] bytes = Files.readAllBytes(Paths.get(filePath));
+        if (!hash.equals(SourceManifest.hash(bytes)))
+            throw new IllegalStateException("\"" + filePath + "\" changed since Application " + appName +
+                    " was analyzed");
+        // the offsets are in characters of the file decoded with the default charset, as Spoon reads it
+        String content = new String(bytes, Charset.defaultCharset());
+        int start = sourceRange.getStart();
+        int end = sourceRange.getEnd();
+        if ((start < 0) || (end < start) || (end >= content.length()))
+            throw new IllegalArgumentException("Invalid range [" + start + ", " + end + "] in \"" + filePath + "\"");
+        return content.substring(start, end + 1);
+    }
+
     public List<Class_> getClasses(String appName) throws IOException {
-        if (!exists(appName))
+        List<Class_> classes = new ArrayList<>();
+        if (!forEachClass(appName, classes::add))
             return null;
-        logger.info("Loading class data for Application " + appName + " !");
-        String savePath = Paths.get(outputPath, appName, classFileName).toString();
-        String dataString = FileUtils.readFileToString(new File(savePath), StandardCharsets.UTF_8);
-        ClassContainer.Builder classContainer = ClassContainer.newBuilder();
-        JsonFormat.parser().merge(dataString, classContainer);
-        return classContainer.getClassesList();
+        return classes;
     }
 
     public List<Method_> getMethods(String appName) throws IOException {
-        if (!exists(appName))
+        List<Method_> methods = new ArrayList<>();
+        if (!forEachMethod(appName, methods::add))
             return null;
-        logger.info("Loading method data for Application " + appName + " !");
-        String savePath = Paths.get(outputPath, appName, methodFileName).toString();
-        String dataString = FileUtils.readFileToString(new File(savePath), StandardCharsets.UTF_8);
-        MethodContainer.Builder methodContainer = MethodContainer.newBuilder();
-        JsonFormat.parser().merge(dataString, methodContainer);
-        return methodContainer.getMethodsList();
+        return methods;
     }
 
     public List<Invocation_> getInvocations(String appName) throws IOException {
+        List<Invocation_> invocations = new ArrayList<>();
+        if (!forEachInvocation(appName, invocations::add))
+            return null;
+        return invocations;
+    }
+
+    public boolean forEachClass(String appName, Consumer<Class_> consumer) throws IOException {
+        return forEach(appName, classKind, consumer);
+    }
+
+    public boolean forEachMethod(String appName, Consumer<Method_> consumer) throws IOException {
+        return forEach(appName, methodKind, consumer);
+    }
+
+    public boolean forEachInvocation(String appName, Consumer<Invocation_> consumer) throws IOException {
+        return forEach(appName, invocationKind, consumer);
+    }
+
+    private <T extends Message> boolean forEach(String appName, ResultKind<T> kind, Consumer<T> consumer)
+            throws IOException {
+        if (!exists(appName))
+            return false;
+        String key = cacheKey(appName) + kind.name;
+        List<T> cached = resultCache.get(key);
+        if (cached != null) {
+            logger.debug("Serving cached " + kind.name + " of Application " + appName + " " + resultCache);
+            cached.forEach(consumer);
+            return true;
+        }
+        logger.info("Loading " + kind.name + " of Application " + appName + " !");
+        CachingConsumer<T> loaded = new CachingConsumer<>(consumer, resultCache.getMaxBytes());
+        // the files are opened under the lock but read outside of it, which can take as long as the stream sending the
+        // records, so that a slow client does not hold up the next saving
+        String appKey = cacheKey(appName);
+        Lock lock = lock(appName).readLock();
+        StorageFormat format;
+        long generation;
+        OpenedResults opened;
+        lock.lock();
+        try {
+            generation = generations.getOrDefault(appKey, 0L);
+            format = getStoredFormat(appName);
+            opened = open(appName, kind, format, loaded);
+        }
+        finally {
+            lock.unlock();
+        }
+        AnalysisEvents.ResultsLoaded event = new AnalysisEvents.ResultsLoaded();
+        event.begin();
+        // includes the time taken by the consumer, which sends the records while they are read when streaming
+        try (OpenedResults results = opened) {
+            metrics.time(Metrics.DISK_LOAD, results::read);
+        }
+        if (event.shouldCommit()) {
+            event.appName = appName;
+            event.kind = kind.name;
+            event.format = format.name();
+            event.records = loaded.getCount();
+            event.commit();
+        }
+        // the records are only cached if they were not replaced while they were read
+        lock.lock();
+        try {
+            if (generations.getOrDefault(appKey, 0L) == generation)
+                loaded.store(resultCache, key);
+        }
+        finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    private interface ResultReading {
+        void read() throws IOException;
+    }
+
+    // saved results whose files are open, they are read from these files even if they are replaced meanwhile
+    private static class OpenedResults implements Closeable {
+        private final Closeable file;
+        private final ResultReading reading;
+
+        OpenedResults(Closeable file, ResultReading reading) {
+            this.file = file;
+            this.reading = reading;
+        }
+
+        void read() throws IOException {
+            reading.read();
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    // must be called under the read lock of the application, the index and name table are read right away
+    private <T extends Message> OpenedResults open(String appName, ResultKind<T> kind, StorageFormat format,
+                                                   Consumer<T> consumer) throws IOException {
+        Path savePath = Paths.get(outputPath, appName, kind.fileName(format));
+        if (format == StorageFormat.JSON) {
+            BufferedReader in = Files.newBufferedReader(savePath, StandardCharsets.UTF_8);
+            return new OpenedResults(in, () -> JsonStreamReader.read(in, savePath, kind.name, kind.builders,
+                    consumer));
+        }
+        long[] offsets = BinaryStore.readIndex(indexPath(savePath));
+        Consumer<Message> decoder = (format == StorageFormat.COMPACT) ? decoder(appName, kind, consumer) : null;
+        FileChannel channel = FileChannel.open(savePath, StandardOpenOption.READ);
+        if (decoder != null)
+            return new OpenedResults(channel, () -> BinaryStore.read(channel, offsets, 0, offsets.length,
+                    kind.compactParser, decoder));
+        return new OpenedResults(channel, () -> BinaryStore.read(channel, offsets, 0, offsets.length, kind.parser,
+                consumer));
+    }
+
+    // must be called under the read lock of the application so that the table belongs to the data being decoded. It
+    // is kept until the next saving so that the pages of the queries do not load it again
+    @SuppressWarnings("unchecked")
+    private <T extends Message> Consumer<Message> decoder(String appName, ResultKind<T> kind, Consumer<T> consumer)
+            throws IOException {
+        String key = cacheKey(appName);
+        NameTable nameTable = nameTables.get(key);
+        if (nameTable == null) {
+            nameTable = NameTable.load(Paths.get(outputPath, appName, nameTableFileName));
+            nameTables.put(key, nameTable);
+        }
+        NameTable table = nameTable;
+        return compact -> consumer.accept((T) table.decode(compact, kind.builders.get()));
+    }
+
+    public QueryIndex.Page<Class_> queryClasses(String appName, Map<String, String> filters, String cursor,
+                                                int pageSize) throws IOException {
+        return query(appName, classKind, this::forEachClass, filters, cursor, pageSize);
+    }
+
+    public QueryIndex.Page<Method_> queryMethods(String appName, Map<String, String> filters, String cursor,
+                                                 int pageSize) throws IOException {
+        return query(appName, methodKind, this::forEachMethod, filters, cursor, pageSize);
+    }
+
+    public QueryIndex.Page<Invocation_> queryInvocations(String appName, Map<String, String> filters,
+                                                         String cursor, int pageSize) throws IOException {
+        return query(appName, invocationKind, this::forEachInvocation, filters, cursor, pageSize);
+    }
+
+    // selects the records with the query index then reads only the records of the requested page
+    private <T extends Message> QueryIndex.Page<T> query(String appName, ResultKind<T> kind, ResultLoader<T> loader,
+                                                         Map<String, String> filters, String cursor, int pageSize)
+            throws IOException {
         if (!exists(appName))
             return null;
-        logger.info("Loading invocation data for Application " + appName + " !");
-        String savePath = Paths.get(outputPath, appName, invocationFileName).toString();
-        String dataString = FileUtils.readFileToString(new File(savePath), StandardCharsets.UTF_8);
-        InvocationContainer.Builder invocationContainer = InvocationContainer.newBuilder();
-        JsonFormat.parser().merge(dataString, invocationContainer);
-        return invocationContainer.getInvocationsList();
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("The page size must be positive");
+        // the query index and the data files it refers to must come from the same saving
+        Lock lock = lock(appName).readLock();
+        lock.lock();
+        try {
+            return readPage(appName, kind, loader, filters, cursor, pageSize);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private <T extends Message> QueryIndex.Page<T> readPage(String appName, ResultKind<T> kind, ResultLoader<T> loader,
+                                                            Map<String, String> filters, String cursor, int pageSize)
+            throws IOException {
+        StorageFormat format = getStoredFormat(appName);
+        Path dataPath = Paths.get(outputPath, appName, kind.fileName(format));
+        Path queryPath = Paths.get(outputPath, appName, kind.queryFileName);
+        String key = cacheKey(appName) + kind.name;
+        List<T> records = resultCache.get(key);
+        QueryIndex queryIndex = queryIndexes.get(key);
+        boolean indexed = Files.exists(queryPath) && Files.exists(indexPath(dataPath));
+        if (!indexed && (records == null)) {
+            // results saved before the query indexes were introduced can only be read whole
+            List<T> loaded = new ArrayList<>();
+            loader.forEach(appName, loaded::add);
+            records = loaded;
+        }
+        if (queryIndex == null) {
+            if (indexed)
+                queryIndex = QueryIndex.load(queryPath);
+            else {
+                // and are indexed in memory once, until they are saved again
+                logger.info("Query index not found for the " + kind.name + " of Application " + appName + " !");
+                queryIndex = QueryIndex.build(records, kind.keys, 0);
+            }
+            queryIndexes.put(key, queryIndex);
+        }
+        QueryIndex.Page<Integer> ordinals = queryIndex.page(queryIndex.select(filters), cursor, pageSize);
+        List<T> page = new ArrayList<>(ordinals.getRecords().size());
+        if (records != null) {
+            for (int ordinal : ordinals.getRecords())
+                page.add(records.get(ordinal));
+        }
+        else if (format == StorageFormat.BINARY)
+            BinaryStore.read(dataPath, indexPath(dataPath), ordinals.getRecords(), kind.parser, page::add);
+        else if (format == StorageFormat.COMPACT)
+            BinaryStore.read(dataPath, indexPath(dataPath), ordinals.getRecords(), kind.compactParser,
+                    decoder(appName, kind, page::add));
+        else
+            JsonStreamReader.<T>read(dataPath, indexPath(dataPath), ordinals.getRecords(), kind.builders, page::add);
+        return new QueryIndex.Page<>(page, ordinals.getNextCursor());
     }
+
     public void setOutputPath(String outputPath) {
         this.outputPath = outputPath;
     }
 
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public void setMaxWorkers(int maxWorkers) {
+        this.maxWorkers = maxWorkers;
+    }
+
+    public boolean isSkipText() {
+        return skipText;
+    }
+
+    public void setSkipText(boolean skipText) {
+        this.skipText = skipText;
+    }
+
+    public boolean isLazyContent() {
+        return lazyContent;
+    }
+
+    public void setLazyContent(boolean lazyContent) {
+        this.lazyContent = lazyContent;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public StorageFormat getStorageFormat() {
+        return storageFormat;
+    }
+
+    public void setStorageFormat(StorageFormat storageFormat) {
+        this.storageFormat = storageFormat;
+    }
+
     public void restoreDefaultOutputPath(){
         this.outputPath = defaultOutputPath;
     }
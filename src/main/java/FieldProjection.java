@@ -0,0 +1,36 @@
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FieldProjection {
+    // copies only the top-level fields named in a field mask, resolved once for every message of a stream
+    private final List<Descriptors.FieldDescriptor> fields;
+
+    private FieldProjection(List<Descriptors.FieldDescriptor> fields) {
+        this.fields = fields;
+    }
+
+    public static FieldProjection of(FieldMask fieldMask, Descriptors.Descriptor descriptor) {
+        List<Descriptors.FieldDescriptor> fields = new ArrayList<>(fieldMask.getPathsCount());
+        for (String path : fieldMask.getPathsList()) {
+            Descriptors.FieldDescriptor field = descriptor.findFieldByName(path);
+            if (field == null)
+                throw new IllegalArgumentException("Unknown field \"" + path + "\" for " + descriptor.getName());
+            fields.add(field);
+        }
+        return new FieldProjection(fields);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Message> T apply(T message) {
+        Message.Builder builder = message.newBuilderForType();
+        for (Descriptors.FieldDescriptor field : fields) {
+            if (field.isRepeated() ? (message.getRepeatedFieldCount(field) > 0) : message.hasField(field))
+                builder.setField(field, message.getField(field));
+        }
+        return (T) builder.build();
+    }
+}
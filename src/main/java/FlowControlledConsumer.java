@@ -0,0 +1,60 @@
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.function.Consumer;
+
+public class FlowControlledConsumer<T> implements Consumer<T> {
+    // sends each message only once the transport is ready for it so the responses of a slow client are never
+    // buffered in memory. The messages must be produced outside the gRPC handler thread otherwise the onReady
+    // callbacks of the call can not be delivered while it waits.
+    private final StreamObserver<T> responseObserver;
+    private final ServerCallStreamObserver<T> serverObserver;
+    private final Object lock = new Object();
+    private volatile boolean cancelled = false;
+
+    public FlowControlledConsumer(StreamObserver<T> responseObserver) {
+        this.responseObserver = responseObserver;
+        if (responseObserver instanceof ServerCallStreamObserver) {
+            serverObserver = (ServerCallStreamObserver<T>) responseObserver;
+            serverObserver.setOnReadyHandler(this::wakeUp);
+            serverObserver.setOnCancelHandler(() -> {
+                cancelled = true;
+                wakeUp();
+            });
+        }
+        else
+            serverObserver = null;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void accept(T message) {
+        if (serverObserver != null) {
+            synchronized (lock) {
+                while (!serverObserver.isReady() && !cancelled) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw Status.CANCELLED.withDescription("Interrupted while streaming").asRuntimeException();
+                    }
+                }
+            }
+        }
+        // stops the producer since nothing can be sent to a cancelled call
+        if (cancelled)
+            throw Status.CANCELLED.withDescription("Call cancelled by the client").asRuntimeException();
+        responseObserver.onNext(message);
+    }
+
+    private void wakeUp() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+}
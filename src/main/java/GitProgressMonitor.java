@@ -0,0 +1,45 @@
+import com.decomp.analysis.AnalysisProgress;
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
+import processors.ResultSink;
+
+public class GitProgressMonitor extends EmptyProgressMonitor {
+    // reports the tasks of a clone, fetch or checkout (counting, receiving and resolving objects...) as the cloning
+    // stage of an analysis. JGit updates its tasks for every object so they are only reported once per percent, or
+    // every thousand objects when their number is unknown
+    private static final int unknownStep = 1000;
+    private final ResultSink resultSink;
+    private String task = "";
+    private long completed = 0;
+    private long total = 0;
+    private long reported = 0;
+
+    public GitProgressMonitor(ResultSink resultSink) {
+        this.resultSink = resultSink;
+    }
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+        task = title;
+        completed = 0;
+        total = (totalWork == UNKNOWN) ? 0 : totalWork;
+        report();
+    }
+
+    @Override
+    public void update(int completed) {
+        this.completed += completed;
+        long step = (total > 0) ? Math.max(1, total / 100) : unknownStep;
+        if ((this.completed - reported >= step) || (this.completed == total))
+            report();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return resultSink.isCancelled();
+    }
+
+    private void report() {
+        reported = completed;
+        resultSink.progress(AnalysisProgress.Stage.CLONING, task, completed, total);
+    }
+}
@@ -0,0 +1,245 @@
+import com.google.gson.JsonParseException;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.JsonFormat;
+import processors.Metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class JsonStreamReader {
+    private static final JsonFormat.Parser parser = JsonFormat.parser();
+
+    // parses the messages of a container file one by one and hands each one over as soon as it is read
+    public static <T extends Message> void read(Path path, String fieldName, Supplier<Message.Builder> builders,
+                                                Consumer<T> consumer) throws IOException {
+        read(Files.newBufferedReader(path, StandardCharsets.UTF_8), path, fieldName, builders, consumer);
+    }
+
+    // the file can be opened beforehand, it is then read even if it was replaced since then. It is closed at the end
+    @SuppressWarnings("unchecked")
+    public static <T extends Message> void read(BufferedReader in, Path path, String fieldName,
+                                                Supplier<Message.Builder> builders, Consumer<T> consumer)
+            throws IOException {
+        try (Reader reader = in) {
+            Scanner scanner = new Scanner(reader);
+            // only the parsing of the messages counts as JSON conversion, not the scanning of the container
+            long conversionTime = 0;
+            scanner.expect('{');
+            boolean hasField = !scanner.skipIf('}');
+            while (hasField) {
+                String name = scanner.nextName();
+                scanner.expect(':');
+                if (!name.equals(fieldName))
+                    scanner.nextValue().skip();
+                else {
+                    scanner.expect('[');
+                    boolean hasMessage = !scanner.skipIf(']');
+                    while (hasMessage) {
+                        Message.Builder builder = builders.get();
+                        long start = System.nanoTime();
+                        merge(scanner.nextValue(), builder);
+                        conversionTime += System.nanoTime() - start;
+                        consumer.accept((T) builder.build());
+                        hasMessage = scanner.nextSeparator(']');
+                    }
+                }
+                hasField = scanner.nextSeparator('}');
+            }
+            Metrics.get().observe(Metrics.JSON_CONVERSION, conversionTime);
+        }
+        catch (JsonParseException | InvalidProtocolBufferException e) {
+            throw new IOException("Malformed JSON data in " + path, e);
+        }
+    }
+
+    // parses only the given messages using the offsets saved by JsonStreamWriter
+    @SuppressWarnings("unchecked")
+    public static <T extends Message> void read(Path path, Path indexPath, List<Integer> ordinals,
+                                                Supplier<Message.Builder> builders, Consumer<T> consumer)
+            throws IOException {
+        BinaryStore.readRecords(path, indexPath, ordinals, record -> {
+            // each record also holds the separator or the end of the container so only its first value is parsed
+            String json = StandardCharsets.UTF_8.decode(record).toString();
+            try {
+                Message.Builder builder = builders.get();
+                merge(new Scanner(new StringReader(json)).nextValue(), builder);
+                consumer.accept((T) builder.build());
+            }
+            catch (JsonParseException | InvalidProtocolBufferException e) {
+                throw new IOException("Malformed JSON data in " + path, e);
+            }
+        });
+    }
+
+    // the message is parsed straight from its text, which is read up to its end even if the parser stops before
+    private static void merge(Value value, Message.Builder builder) throws IOException {
+        parser.merge(value, builder);
+        value.skip();
+    }
+
+    // finds the values in the text of a container without parsing them, so that each message is only parsed once
+    private static class Scanner {
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private int position = 0;
+        private int limit = 0;
+
+        Scanner(Reader in) {
+            this.in = in;
+        }
+
+        // the next character without reading it, -1 at the end of the text
+        private int peek() throws IOException {
+            if (position == limit) {
+                int read = in.read(buffer, 0, buffer.length);
+                if (read <= 0)
+                    return -1;
+                position = 0;
+                limit = read;
+            }
+            return buffer[position];
+        }
+
+        private int peekToken() throws IOException {
+            int c = peek();
+            while (isWhitespace(c)) {
+                position++;
+                c = peek();
+            }
+            return c;
+        }
+
+        void expect(char expected) throws IOException {
+            if (!skipIf(expected))
+                throw new JsonParseException("Expected '" + expected + "'");
+        }
+
+        boolean skipIf(char expected) throws IOException {
+            if (peekToken() != expected)
+                return false;
+            position++;
+            return true;
+        }
+
+        // true if another value follows, false at the end of the object or array
+        boolean nextSeparator(char end) throws IOException {
+            if (skipIf(','))
+                return true;
+            expect(end);
+            return false;
+        }
+
+        String nextName() throws IOException {
+            expect('"');
+            StringBuilder name = new StringBuilder();
+            int c = peek();
+            while (c != '"') {
+                if (c == -1)
+                    throw new JsonParseException("Unterminated name");
+                position++;
+                if (c == '\\') {
+                    c = peek();
+                    if (c == -1)
+                        throw new JsonParseException("Unterminated name");
+                    position++;
+                }
+                name.append((char) c);
+                c = peek();
+            }
+            position++;
+            return name.toString();
+        }
+
+        Value nextValue() throws IOException {
+            int c = peekToken();
+            if ((c == -1) || (c == ',') || (c == '}') || (c == ']') || (c == ':'))
+                throw new JsonParseException("Expected a value");
+            return new Value(this);
+        }
+    }
+
+    // the text of one value, ending after its closing character or before the delimiter of a literal
+    private static class Value extends Reader {
+        private final Scanner scanner;
+        private int depth = 0;
+        private boolean inString = false;
+        private boolean escaped = false;
+        private boolean started = false;
+        private boolean ended = false;
+
+        Value(Scanner scanner) {
+            this.scanner = scanner;
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            if (ended)
+                return -1;
+            int count = 0;
+            while ((count < length) && !ended) {
+                int c = scanner.peek();
+                if (c == -1) {
+                    if (count > 0)
+                        break;
+                    // only a literal can end with the text
+                    if (!started || (depth > 0) || inString)
+                        throw new JsonParseException("Unterminated value");
+                    ended = true;
+                    return -1;
+                }
+                if (inString) {
+                    if (escaped)
+                        escaped = false;
+                    else if (c == '\\')
+                        escaped = true;
+                    else if (c == '"') {
+                        inString = false;
+                        ended = (depth == 0);
+                    }
+                }
+                else if (c == '"')
+                    inString = true;
+                else if ((c == '{') || (c == '['))
+                    depth++;
+                else if ((depth == 0) && ((c == '}') || (c == ']') || (c == ',') || isWhitespace(c))) {
+                    // the delimiter after a literal is left to the scanner
+                    ended = true;
+                    break;
+                }
+                else if ((c == '}') || (c == ']')) {
+                    depth--;
+                    ended = (depth == 0);
+                }
+                chars[offset + count++] = (char) c;
+                scanner.position++;
+                started = true;
+            }
+            return ended && (count == 0) ? -1 : count;
+        }
+
+        void skip() throws IOException {
+            char[] skipped = new char[1024];
+            int read;
+            do {
+                read = read(skipped, 0, skipped.length);
+            } while (read != -1);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r');
+    }
+}
@@ -0,0 +1,133 @@
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.util.JsonFormat;
+import processors.Metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class JsonStreamWriter {
+    private static final int bufferSize = 1 << 16;
+    private static final JsonFormat.Printer printer = JsonFormat.printer().includingDefaultValueFields();
+
+    // writes the messages in the same JSON layout as printing their container at once, one message at a time
+    public static void write(Path path, String fieldName, Iterable<? extends MessageOrBuilder> messages)
+            throws IOException {
+        write(path, fieldName, messages, null);
+    }
+
+    // the index, when given, receives the byte offset of each message as a big-endian long like a BinaryStore index
+    public static void write(Path path, String fieldName, Iterable<? extends MessageOrBuilder> messages,
+                             Path indexPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(
+                     Channels.newOutputStream(channel), bufferSize));
+             Writer out = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8), bufferSize);
+             DataOutputStream index = (indexPath == null) ? null : new DataOutputStream(new BufferedOutputStream(
+                     Files.newOutputStream(indexPath), bufferSize))) {
+            out.write("{\n  \"" + fieldName + "\": [");
+            IndentingAppendable indented = new IndentingAppendable(out, "  ");
+            boolean first = true;
+            // only the printing of the messages counts as JSON conversion, not the writing of the buffers
+            long conversionTime = 0;
+            for (MessageOrBuilder message : messages) {
+                if (!first)
+                    out.write(", ");
+                if (index != null) {
+                    // flushing the writers only moves the encoded characters to the counter, not to the file
+                    out.flush();
+                    index.writeLong(counter.getCount());
+                }
+                long start = System.nanoTime();
+                printer.appendTo(message, indented);
+                conversionTime += System.nanoTime() - start;
+                first = false;
+            }
+            Metrics.get().observe(Metrics.JSON_CONVERSION, conversionTime);
+            out.write("]\n}");
+            out.write(System.lineSeparator());
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static class IndentingAppendable implements Appendable {
+        private final Writer out;
+        private final String indent;
+
+        IndentingAppendable(Writer out, String indent) {
+            this.out = out;
+            this.indent = indent;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            int from = start;
+            for (int i = start; i < end; i++) {
+                if (csq.charAt(i) == '\n') {
+                    out.append(csq, from, i + 1);
+                    out.write(indent);
+                    from = i + 1;
+                }
+            }
+            out.append(csq, from, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            out.write(c);
+            if (c == '\n')
+                out.write(indent);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import com.decomp.analysis.AnalysisProgress;
+import com.decomp.analysis.Class_;
+import com.decomp.analysis.JobStatus;
+import com.decomp.analysis.Method_;
+import processors.ResultSink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public class LiveAnalysis implements ResultSink {
+    // an ongoing analysis whose parsed types and methods are replayed to the streams that follow it until the analysis
+    // finishes. They are only kept while a stream follows it, from the first one parsed since then, and are dropped
+    // once the analysis finishes since the complete records are then read from the saved results. Its progress is
+    // only kept as the latest one.
+    // It is also the job of the analysis: queued until a worker starts it, and cancelled either before it starts or
+    // at its next progress before the results are saved
+    private final String id = UUID.randomUUID().toString();
+    private final String appName;
+    private final boolean live;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final Records<Class_> classes = new Records<>();
+    private final Records<Method_> methods = new Records<>();
+    private final long start = System.nanoTime();
+    private final long submittedAt = System.currentTimeMillis();
+    private long startedAt = 0;
+    private long finishedAt = 0;
+    private JobStatus.State state = JobStatus.State.QUEUED;
+    private String error = "";
+    private volatile boolean cancelled = false;
+    private AnalysisProgress progress = AnalysisProgress.getDefaultInstance();
+    private long progressVersion = 0;
+    private boolean finished = false;
+
+    // analyses that only update part of the results are not live since their records are not the complete results
+    public LiveAnalysis(String appName, boolean live) {
+        this.appName = appName;
+        this.live = live;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    public boolean isLive() {
+        return live;
+    }
+
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    public long getElapsedMs() {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    // the records of an analysis that is not live are never replayed
+    @Override
+    public synchronized void acceptClass(Class_ class_) {
+        if (!live || (classes.followers == 0))
+            return;
+        classes.records.add(class_);
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void acceptMethod(Method_ method_) {
+        if (!live || (methods.followers == 0))
+            return;
+        methods.records.add(method_);
+        notifyAll();
+    }
+
+    // the Git operations stop on their own through isCancelled() and the results are always saved completely
+    @Override
+    public synchronized void progress(AnalysisProgress.Stage stage, String task, long completed, long total) {
+        if (cancelled && (stage.getNumber() > AnalysisProgress.Stage.CLONING_VALUE) &&
+                (stage.getNumber() < AnalysisProgress.Stage.SAVING_VALUE))
+            throw new CancellationException("Analysis of " + appName + " was cancelled");
+        progress = AnalysisProgress.newBuilder().setStage(stage).setTask((task == null) ? "" : task)
+                .setCompleted(completed).setTotal(total).setElapsedMs(getElapsedMs()).build();
+        progressVersion++;
+        notifyAll();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // returns false when the job was cancelled while it was queued
+    public synchronized boolean start() {
+        if (state != JobStatus.State.QUEUED)
+            return false;
+        state = JobStatus.State.RUNNING;
+        startedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    // returns false when the job is already finished, a queued job is finished right away
+    public boolean cancel() {
+        synchronized (this) {
+            if (finished)
+                return false;
+            cancelled = true;
+            if (state != JobStatus.State.QUEUED)
+                return true;
+            state = JobStatus.State.CANCELLED;
+        }
+        finish(new CancellationException("Analysis of " + appName + " was cancelled"));
+        return true;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public synchronized long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public synchronized JobStatus getStatus() {
+        return JobStatus.newBuilder().setJobId(id).setAppName(appName).setState(state).setProgress(progress)
+                .setMessage(error).setSubmittedAt(submittedAt).setStartedAt(startedAt).setFinishedAt(finishedAt)
+                .build();
+    }
+
+    // an analysis that fails after being cancelled was stopped by the cancellation
+    public void finish(Throwable error) {
+        synchronized (this) {
+            finished = true;
+            finishedAt = System.currentTimeMillis();
+            if (error == null)
+                state = JobStatus.State.SUCCEEDED;
+            else {
+                state = cancelled ? JobStatus.State.CANCELLED : JobStatus.State.FAILED;
+                this.error = String.valueOf(error.getMessage());
+            }
+            // the finished jobs are kept for a while, without the records
+            classes.records.clear();
+            methods.records.clear();
+            notifyAll();
+        }
+        if (error == null)
+            completion.complete(null);
+        else
+            completion.completeExceptionally(error);
+    }
+
+    public void forEachClass(Consumer<Class_> consumer) throws IOException {
+        replay(classes, consumer);
+    }
+
+    public void forEachMethod(Consumer<Method_> consumer) throws IOException {
+        replay(methods, consumer);
+    }
+
+    // sends the current progress then every new one until the analysis finishes, the progress made while the
+    // consumer is busy is skipped except for the latest one
+    public void followProgress(Consumer<AnalysisProgress> consumer) throws IOException {
+        long sentVersion = -1;
+        while (true) {
+            AnalysisProgress latest;
+            synchronized (this) {
+                while ((sentVersion == progressVersion) && !finished) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for the analysis", e);
+                    }
+                }
+                if (sentVersion == progressVersion)
+                    return;
+                latest = progress;
+                sentVersion = progressVersion;
+            }
+            consumer.accept(latest);
+        }
+    }
+
+    // the records of one kind and the number of streams following them
+    private static class Records<T> {
+        private final List<T> records = new ArrayList<>();
+        private int followers = 0;
+    }
+
+    private <T> void replay(Records<T> records, Consumer<T> consumer) throws IOException {
+        synchronized (this) {
+            records.followers++;
+        }
+        try {
+            replay(records.records, consumer);
+        }
+        finally {
+            synchronized (this) {
+                // the records are not kept when nobody follows them anymore
+                if (--records.followers == 0)
+                    records.records.clear();
+            }
+        }
+    }
+
+    private <T> void replay(List<T> records, Consumer<T> consumer) throws IOException {
+        int next = 0;
+        while (true) {
+            T record;
+            synchronized (this) {
+                while ((next >= records.size()) && !finished) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for the analysis", e);
+                    }
+                }
+                if (next >= records.size())
+                    return;
+                record = records.get(next++);
+            }
+            // sent outside the lock since the consumer may wait for the client
+            consumer.accept(record);
+        }
+    }
+}
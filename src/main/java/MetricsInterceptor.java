@@ -0,0 +1,64 @@
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import processors.Metrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+public class MetricsInterceptor implements ServerInterceptor {
+    // counts the RPCs being served and the finished ones by method and status. The results are streamed from other
+    // threads after the handlers return so a call is only finished once the listener is completed or cancelled
+    private final Metrics metrics = Metrics.get();
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String method = call.getMethodDescriptor().getBareMethodName();
+        AtomicBoolean finished = new AtomicBoolean(false);
+        AtomicBoolean counted = new AtomicBoolean(false);
+        Runnable finish = () -> {
+            if (finished.compareAndSet(false, true))
+                metrics.add(Metrics.ACTIVE_RPCS, -1);
+        };
+        // a cancelled call can still be closed by the thread streaming its results, it is only counted once
+        Consumer<Status.Code> count = code -> {
+            if (counted.compareAndSet(false, true))
+                metrics.count(Metrics.RPCS, 1, "method", method, "code", code.name());
+        };
+        metrics.add(Metrics.ACTIVE_RPCS, 1);
+        ServerCall<ReqT, RespT> countedCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                count.accept(status.getCode());
+                super.close(status, trailers);
+            }
+        };
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(countedCall, headers);
+        }
+        catch (RuntimeException e) {
+            finish.run();
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onComplete() {
+                finish.run();
+                super.onComplete();
+            }
+
+            @Override
+            public void onCancel() {
+                finish.run();
+                count.accept(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NameTable {
+    // converts the results to and from their compact messages, whose string fields that hold names are int32 fields
+    // with the same number pointing into this table. The empty string is always the first name so that empty and
+    // unset fields stay the same in both representations.
+    private final List<String> names;
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    public NameTable() {
+        names = new ArrayList<>();
+        index("");
+    }
+
+    private NameTable(List<String> names) {
+        this.names = names;
+    }
+
+    public int index(String name) {
+        Integer index = indexes.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            indexes.put(name, index);
+        }
+        return index;
+    }
+
+    public String name(int index) {
+        if ((index < 0) || (index >= names.size()))
+            throw new IllegalArgumentException("Unknown name index " + index);
+        return names.get(index);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    // the names added since the table had the given size
+    public List<String> namesFrom(int from) {
+        return names.subList(from, names.size());
+    }
+
+    public Message encode(Message message, Message.Builder compact) {
+        return convert(message, compact, true);
+    }
+
+    public Message decode(Message compact, Message.Builder message) {
+        return convert(compact, message, false);
+    }
+
+    private Message convert(Message source, Message.Builder target, boolean encode) {
+        Descriptors.Descriptor targetType = target.getDescriptorForType();
+        for (Descriptors.FieldDescriptor field : source.getDescriptorForType().getFields()) {
+            Descriptors.FieldDescriptor targetField = targetType.findFieldByNumber(field.getNumber());
+            if (field.isRepeated()) {
+                int count = source.getRepeatedFieldCount(field);
+                for (int i = 0; i < count; i++)
+                    target.addRepeatedField(targetField,
+                            convertValue(source.getRepeatedField(field, i), field, targetField, target, encode));
+            }
+            else if (!field.hasPresence() || source.hasField(field))
+                target.setField(targetField, convertValue(source.getField(field), field, targetField, target, encode));
+        }
+        return target.build();
+    }
+
+    private Object convertValue(Object value, Descriptors.FieldDescriptor field,
+                                Descriptors.FieldDescriptor targetField, Message.Builder target, boolean encode) {
+        if (field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE)
+            return convert((Message) value, target.newBuilderForField(targetField), encode);
+        if (field.getJavaType() == targetField.getJavaType())
+            return value;
+        return encode ? index((String) value) : name((Integer) value);
+    }
+
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(names.size());
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    // a loaded table is only used to decode so its names are not indexed
+    public static NameTable load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int count = in.readInt();
+            List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                names.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            return new NameTable(names);
+        }
+    }
+}
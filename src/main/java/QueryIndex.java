@@ -0,0 +1,210 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+public class QueryIndex {
+    // for every indexed field, the sorted positions (ordinals) of the records holding each value in the data file
+    public static final String PACKAGE = "package";
+    public static final String SERVICE_NAME = "serviceName";
+    public static final String PARENT_NAME = "parentName";
+    public static final String IS_LOCAL = "isLocal";
+    private static final int fileVersion = 1;
+    private static final Random random = new Random();
+    private final long generation;
+    private final int size;
+    private final Map<String, TreeMap<String, int[]>> postings;
+
+    public static class Page<T> {
+        private final List<T> records;
+        private final String nextCursor;
+
+        public Page(List<T> records, String nextCursor) {
+            this.records = records;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<T> getRecords() {
+            return records;
+        }
+
+        // empty when there are no more records
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    private QueryIndex(long generation, int size, Map<String, TreeMap<String, int[]>> postings) {
+        this.generation = generation;
+        this.size = size;
+        this.postings = postings;
+    }
+
+    // fields whose extractor returns null for a record do not index it
+    public static <T> QueryIndex build(List<T> records, Map<String, Function<T, String>> extractors) {
+        return build(records, extractors, random.nextLong() & Long.MAX_VALUE);
+    }
+
+    public static <T> QueryIndex build(List<T> records, Map<String, Function<T, String>> extractors,
+                                       long generation) {
+        Map<String, TreeMap<String, int[]>> postings = new HashMap<>();
+        for (Map.Entry<String, Function<T, String>> extractor : extractors.entrySet()) {
+            Map<String, List<Integer>> ordinals = new HashMap<>();
+            for (int i = 0; i < records.size(); i++) {
+                String key = extractor.getValue().apply(records.get(i));
+                if (key != null)
+                    ordinals.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+            TreeMap<String, int[]> fieldPostings = new TreeMap<>();
+            ordinals.forEach((key, list) ->
+                    fieldPostings.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+            postings.put(extractor.getKey(), fieldPostings);
+        }
+        return new QueryIndex(generation, records.size(), postings);
+    }
+
+    public static String packageOf(String qualifiedName) {
+        int separator = qualifiedName.lastIndexOf('.');
+        return (separator < 0) ? "" : qualifiedName.substring(0, separator);
+    }
+
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(fileVersion);
+            out.writeLong(generation);
+            out.writeInt(size);
+            out.writeInt(postings.size());
+            for (Map.Entry<String, TreeMap<String, int[]>> field : postings.entrySet()) {
+                out.writeUTF(field.getKey());
+                out.writeInt(field.getValue().size());
+                for (Map.Entry<String, int[]> entry : field.getValue().entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (int ordinal : entry.getValue())
+                        out.writeInt(ordinal);
+                }
+            }
+        }
+    }
+
+    public static QueryIndex load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int version = in.readInt();
+            if (version != fileVersion)
+                throw new IOException("Unsupported query index version \"" + version + "\" in " + path);
+            long generation = in.readLong();
+            int size = in.readInt();
+            int fieldCount = in.readInt();
+            Map<String, TreeMap<String, int[]>> postings = new HashMap<>();
+            for (int f = 0; f < fieldCount; f++) {
+                String field = in.readUTF();
+                int keyCount = in.readInt();
+                TreeMap<String, int[]> fieldPostings = new TreeMap<>();
+                for (int k = 0; k < keyCount; k++) {
+                    String key = in.readUTF();
+                    int[] ordinals = new int[in.readInt()];
+                    for (int i = 0; i < ordinals.length; i++)
+                        ordinals[i] = in.readInt();
+                    fieldPostings.put(key, ordinals);
+                }
+                postings.put(field, fieldPostings);
+            }
+            return new QueryIndex(generation, size, postings);
+        }
+    }
+
+    // returns the sorted ordinals of the records matching every filter, the package filter matches sub-packages too
+    public int[] select(Map<String, String> filters) {
+        int[] selected = null;
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            TreeMap<String, int[]> fieldPostings = postings.get(filter.getKey());
+            if (fieldPostings == null)
+                throw new IllegalArgumentException("Filtering by " + filter.getKey() + " is not supported");
+            int[] matches;
+            if (filter.getKey().equals(PACKAGE))
+                matches = selectPackage(fieldPostings, filter.getValue());
+            else
+                matches = fieldPostings.getOrDefault(filter.getValue(), new int[0]);
+            selected = (selected == null) ? matches : intersect(selected, matches);
+        }
+        if (selected == null) {
+            selected = new int[size];
+            Arrays.setAll(selected, i -> i);
+        }
+        return selected;
+    }
+
+    private static int[] selectPackage(TreeMap<String, int[]> fieldPostings, String packagePrefix) {
+        if (packagePrefix.isEmpty())
+            return union(new ArrayList<>(fieldPostings.values()));
+        List<int[]> matches = new ArrayList<>();
+        if (fieldPostings.containsKey(packagePrefix))
+            matches.add(fieldPostings.get(packagePrefix));
+        // '/' is the character right after '.' so this covers every sub-package
+        SortedMap<String, int[]> subPackages = fieldPostings.subMap(packagePrefix + ".", packagePrefix + "/");
+        matches.addAll(subPackages.values());
+        return union(matches);
+    }
+
+    private static int[] union(List<int[]> postings) {
+        int[] merged = postings.stream().flatMapToInt(Arrays::stream).toArray();
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while ((i < a.length) && (j < b.length)) {
+            if (a[i] < b[j])
+                i++;
+            else if (a[i] > b[j])
+                j++;
+            else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    // the cursor holds the generation of the index so that it can not be used on results saved after it was issued
+    public Page<Integer> page(int[] selected, String cursor, int pageSize) {
+        int from = 0;
+        if ((cursor != null) && !cursor.isEmpty()) {
+            String[] parts = cursor.split(":");
+            long cursorGeneration;
+            int lastOrdinal;
+            try {
+                cursorGeneration = Long.parseLong(parts[0], 16);
+                lastOrdinal = Integer.parseInt(parts[1]);
+            }
+            catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Malformed cursor \"" + cursor + "\"");
+            }
+            if (cursorGeneration != generation)
+                throw new IllegalArgumentException("The cursor \"" + cursor + "\" has expired");
+            int position = Arrays.binarySearch(selected, lastOrdinal);
+            from = (position >= 0) ? position + 1 : -position - 1;
+        }
+        int to = (int) Math.min(selected.length, (long) from + pageSize);
+        List<Integer> ordinals = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++)
+            ordinals.add(selected[i]);
+        String nextCursor = (to < selected.length) ? Long.toHexString(generation) + ":" + selected[to - 1] : "";
+        return new Page<>(ordinals, nextCursor);
+    }
+}
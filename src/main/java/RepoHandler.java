@@ -1,12 +1,37 @@
 import org.apache.commons.lang3.NotImplementedException;
+import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import processors.Settings;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class RepoHandler {
     private String appName;
@@ -15,6 +40,9 @@ public class RepoHandler {
     private static final Logger logger = LoggerFactory.getLogger(RepoHandler.class);
     private static final String dataPath = "./data/repositories/";
     private static final String tempPath = "./data/temp/";
+    private static final String configSection = "decomp";
+    private boolean fullClone = false;
+    private ProgressMonitor progressMonitor = NullProgressMonitor.INSTANCE;
 
     public String getAppName() {
         return appName;
@@ -33,9 +61,27 @@ public class RepoHandler {
     }
 
 
+    public boolean isFullClone() {
+        return fullClone;
+    }
+
+    public void setFullClone(boolean fullClone) {
+        this.fullClone = fullClone;
+    }
+
+    public ProgressMonitor getProgressMonitor() {
+        return progressMonitor;
+    }
+
+    // receives the progress of the clones, fetches, pulls and checkouts
+    public void setProgressMonitor(ProgressMonitor progressMonitor) {
+        this.progressMonitor = progressMonitor;
+    }
+
     public RepoHandler(String appName, String appRepo) {
         this.appName = appName;
         this.appRepo = appRepo;
+        this.fullClone = Settings.getBoolean("FULL_CLONE");
     }
 
     public String getOrClone() throws IOException {
@@ -53,14 +99,155 @@ public class RepoHandler {
         }
         try {
             logger.info("Cloning source code for " + appName + " !");
-            Git.cloneRepository()
+            CloneCommand clone = Git.cloneRepository()
                     .setURI(appRepo)
                     .setDirectory(new File(repoPath))
-                    .call();
+                    .setNoCheckout(!fullClone)
+                    .setProgressMonitor(progressMonitor);
+            if (!fullClone)
+                clone.setDepth(1);
+            try (Git git = clone.call()) {
+                if (!fullClone) {
+                    // only the Java sources are analyzed so the rest of the tree is never checked out
+                    StoredConfig config = git.getRepository().getConfig();
+                    config.setBoolean(configSection, null, "sparse", true);
+                    config.save();
+                    checkoutSources(git, git.getRepository().resolve(Constants.HEAD));
+                }
+            }
         }
         catch (GitAPIException e){
             throw new IOException("Git clone failed!");
         }
         return repoPath;
     }
+
+    private static boolean isSourcePath(String path) {
+        String rootedPath = "/" + path;
+        return path.endsWith(".java") &&
+                (rootedPath.contains("/src/main/java/") || rootedPath.contains("/src/test/java/"));
+    }
+
+    private void checkoutSources(Git git, ObjectId commit) throws IOException, GitAPIException {
+        List<String> sourcePaths = new ArrayList<>();
+        try (RevWalk revWalk = new RevWalk(git.getRepository());
+             TreeWalk treeWalk = new TreeWalk(git.getRepository())) {
+            treeWalk.addTree(revWalk.parseCommit(commit).getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathSuffixFilter.create(".java"));
+            while (treeWalk.next()) {
+                if (isSourcePath(treeWalk.getPathString()))
+                    sourcePaths.add(treeWalk.getPathString());
+            }
+        }
+        logger.info("Checking out " + sourcePaths.size() + " Java source files for " + appName + " !");
+        if (!sourcePaths.isEmpty())
+            git.checkout().setStartPoint(commit.getName()).addPaths(sourcePaths).setProgressMonitor(progressMonitor)
+                    .call();
+    }
+
+    // a sparse copy has no complete index to merge into so the branch is moved to the fetched commit and only the
+    // Java sources are updated
+    private void fetchSources(Git git) throws IOException, GitAPIException {
+        Repository repository = git.getRepository();
+        String branch = repository.getBranch();
+        FetchCommand fetch = git.fetch().setProgressMonitor(progressMonitor);
+        if (new File(repository.getDirectory(), "shallow").exists())
+            fetch.setDepth(1);
+        fetch.call();
+        ObjectId oldHead = repository.resolve(Constants.HEAD);
+        ObjectId newHead = repository.resolve(Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + branch);
+        if ((newHead == null) || newHead.equals(oldHead))
+            return;
+        for (DiffEntry diff : diffJavaFiles(git, oldHead, newHead)) {
+            if (diff.getChangeType() == DiffEntry.ChangeType.DELETE ||
+                    diff.getChangeType() == DiffEntry.ChangeType.RENAME)
+                Files.deleteIfExists(Paths.get(repository.getWorkTree().getPath(), diff.getOldPath()));
+        }
+        RefUpdate refUpdate = repository.updateRef(Constants.R_HEADS + branch);
+        refUpdate.setNewObjectId(newHead);
+        refUpdate.forceUpdate();
+        checkoutSources(git, newHead);
+    }
+
+    private List<DiffEntry> diffJavaFiles(Git git, ObjectId oldCommit, ObjectId newCommit)
+            throws IOException, GitAPIException {
+        Repository repository = git.getRepository();
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+            CanonicalTreeParser oldTree = new CanonicalTreeParser();
+            oldTree.reset(reader, revWalk.parseCommit(oldCommit).getTree());
+            CanonicalTreeParser newTree = new CanonicalTreeParser();
+            newTree.reset(reader, revWalk.parseCommit(newCommit).getTree());
+            return git.diff().setOldTree(oldTree).setNewTree(newTree)
+                    .setPathFilter(PathSuffixFilter.create(".java")).call();
+        }
+    }
+
+    private String findRepoPath() {
+        String repoPath = Paths.get(dataPath, appName).toString();
+        if (new File(repoPath).isDirectory())
+            return repoPath;
+        return Paths.get(tempPath, appName).toString();
+    }
+
+    public String getHeadCommit() throws IOException {
+        try (Git git = Git.open(new File(findRepoPath()))) {
+            ObjectId head = git.getRepository().resolve(Constants.HEAD);
+            return (head == null) ? null : head.getName();
+        }
+        catch (RepositoryNotFoundException e) {
+            return null;
+        }
+    }
+
+    // fetches and fast-forwards the local copy then returns the Java files that changed since the given commit
+    // or null when they cannot be determined
+    public Set<String> pullChanges(String previousCommit) throws IOException {
+        String repoPath = findRepoPath();
+        try (Git git = Git.open(new File(repoPath))) {
+            Repository repository = git.getRepository();
+            if (repository.getConfig().getSubsections("remote").isEmpty())
+                logger.info("No remote found for " + appName + ", using the local source code!");
+            else if (repository.getConfig().getBoolean(configSection, "sparse", false)) {
+                logger.info("Fetching source code for " + appName + " !");
+                fetchSources(git);
+            }
+            else {
+                logger.info("Pulling source code for " + appName + " !");
+                git.pull().setFastForward(MergeCommand.FastForwardMode.FF_ONLY).setProgressMonitor(progressMonitor)
+                        .call();
+            }
+            if (previousCommit == null)
+                return null;
+            ObjectId oldCommit = repository.resolve(previousCommit);
+            ObjectId newCommit = repository.resolve(Constants.HEAD);
+            if ((oldCommit == null) || (newCommit == null))
+                return null;
+            Set<String> changedFiles = new HashSet<>();
+            try {
+                for (DiffEntry diff : diffJavaFiles(git, oldCommit, newCommit)){
+                    for (String path : Arrays.asList(diff.getOldPath(), diff.getNewPath())){
+                        if (!path.equals(DiffEntry.DEV_NULL))
+                            changedFiles.add(Paths.get(repoPath, path).toAbsolutePath().normalize().toString());
+                    }
+                }
+            }
+            catch (MissingObjectException e) {
+                // the previous commit is not part of a shallow history anymore
+                logger.info("Commit " + previousCommit + " not found for " + appName + " !");
+                return null;
+            }
+            logger.info("Found " + changedFiles.size() + " changed Java files for " + appName + " since commit " +
+                    previousCommit);
+            return changedFiles;
+        }
+        catch (RepositoryNotFoundException e) {
+            logger.info("Source code for " + appName + " is not a Git repository!");
+            return null;
+        }
+        catch (GitAPIException e){
+            throw new IOException("Git pull failed!", e);
+        }
+    }
 }
@@ -0,0 +1,95 @@
+import com.google.protobuf.MessageLite;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ResultCache {
+    // parsed results kept in access order and weighted by their serialized size
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long usedBytes = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class Entry {
+        private final List<? extends MessageLite> messages;
+        private final long bytes;
+
+        Entry(List<? extends MessageLite> messages, long bytes) {
+            this.messages = messages;
+            this.bytes = bytes;
+        }
+    }
+
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends MessageLite> List<T> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (List<T>) entry.messages;
+    }
+
+    public synchronized void put(String key, List<? extends MessageLite> messages, long bytes) {
+        if (bytes > maxBytes)
+            return;
+        Entry previous = entries.remove(key);
+        if (previous != null)
+            usedBytes -= previous.bytes;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((usedBytes + bytes > maxBytes) && it.hasNext()) {
+            usedBytes -= it.next().getValue().bytes;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+        entries.put(key, new Entry(messages, bytes));
+        usedBytes += bytes;
+    }
+
+    public synchronized void invalidate(String keyPrefix) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> entry = it.next();
+            if (entry.getKey().startsWith(keyPrefix)) {
+                usedBytes -= entry.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCache{hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() +
+                ", usedBytes=" + getUsedBytes() + ", maxBytes=" + maxBytes + "}";
+    }
+}
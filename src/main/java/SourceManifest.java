@@ -0,0 +1,118 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class SourceManifest {
+    // content hash of every source file used in an analysis, saved as "hash<TAB>path" lines
+    private final Map<String, String> hashes;
+
+    private SourceManifest(Map<String, String> hashes) {
+        this.hashes = hashes;
+    }
+
+    public static SourceManifest compute(List<String> sourceFiles) throws IOException {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        byte[] buffer = new byte[1 << 16];
+        for (String sourceFile : sourceFiles) {
+            MessageDigest digest = newDigest();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(Path.of(sourceFile)), digest)) {
+                while (in.read(buffer) != -1)
+                    ;
+            }
+            hashes.put(sourceFile, toHex(digest.digest()));
+        }
+        return new SourceManifest(hashes);
+    }
+
+    // rehashes only the given paths, which is enough when the changed files are already known (from Git for example)
+    public SourceManifest update(Set<String> changedPaths, List<String> sourceFiles) throws IOException {
+        Set<String> currentFiles = new HashSet<>(sourceFiles);
+        List<String> rehashed = new ArrayList<>();
+        Map<String, String> updated = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            if (!changedPaths.contains(entry.getKey()))
+                updated.put(entry.getKey(), entry.getValue());
+        }
+        for (String changedPath : changedPaths) {
+            if (currentFiles.contains(changedPath))
+                rehashed.add(changedPath);
+        }
+        updated.putAll(compute(rehashed).hashes);
+        return new SourceManifest(updated);
+    }
+
+    public static SourceManifest load(Path path) throws IOException {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int separator = line.indexOf('\t');
+                if (separator > 0)
+                    hashes.put(line.substring(separator + 1), line.substring(0, separator));
+            }
+        }
+        return new SourceManifest(hashes);
+    }
+
+    public void save(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : hashes.entrySet()) {
+                out.write(entry.getValue() + "\t" + entry.getKey());
+                out.newLine();
+            }
+        }
+    }
+
+    // null when the file was not part of the analysis
+    public String getHash(String sourceFile) {
+        return hashes.get(sourceFile);
+    }
+
+    public static String hash(byte[] content) {
+        return toHex(newDigest().digest(content));
+    }
+
+    public Set<String> changedFiles(SourceManifest previous) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            if (!entry.getValue().equals(previous.hashes.get(entry.getKey())))
+                changed.add(entry.getKey());
+        }
+        return changed;
+    }
+
+    public Set<String> removedFiles(SourceManifest previous) {
+        Set<String> removed = new HashSet<>(previous.hashes.keySet());
+        removed.removeAll(hashes.keySet());
+        return removed;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return hex.toString();
+    }
+}
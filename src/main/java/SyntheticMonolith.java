@@ -0,0 +1,102 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class SyntheticMonolith {
+    // generates a compilable source tree of the given shape. The classes are split evenly between the services, each
+    // class extends the previous one until the hierarchy reaches its depth, and every method calls random methods of
+    // the classes of its service. A single service is laid out as a monolith (src/main/java) and several services as
+    // one directory per service (serviceN/src/main/java) like the distributed applications.
+    private static final String rootPackage = "synthetic";
+    private static final int classesPerPackage = 25;
+    private final int classes;
+    private final int methodsPerClass;
+    private final int hierarchyDepth;
+    private final int callsPerMethod;
+    private final int services;
+    private final long seed;
+
+    public SyntheticMonolith(int classes, int methodsPerClass, int hierarchyDepth, int callsPerMethod, int services,
+                             long seed) {
+        if ((classes <= 0) || (methodsPerClass <= 0) || (hierarchyDepth <= 0) || (callsPerMethod < 0) ||
+                (services <= 0) || (services > classes))
+            throw new IllegalArgumentException("Invalid synthetic application: " + classes + " classes, " +
+                    methodsPerClass + " methods per class, depth " + hierarchyDepth + ", " + callsPerMethod +
+                    " calls per method and " + services + " services");
+        this.classes = classes;
+        this.methodsPerClass = methodsPerClass;
+        this.hierarchyDepth = hierarchyDepth;
+        this.callsPerMethod = callsPerMethod;
+        this.services = services;
+        this.seed = seed;
+    }
+
+    // returns the number of bytes written
+    public long generate(Path root) throws IOException {
+        Random random = new Random(seed);
+        long bytes = 0;
+        for (int service = 0; service < services; service++) {
+            int serviceClasses = (classes * (service + 1)) / services - (classes * service) / services;
+            String servicePackage = (services == 1) ? rootPackage : rootPackage + ".service" + service;
+            Path sourcePath = ((services == 1) ? root : root.resolve("service" + service)).resolve("src/main/java");
+            for (int i = 0; i < serviceClasses; i++) {
+                Path packagePath = sourcePath.resolve(packageName(servicePackage, i).replace('.', '/'));
+                Files.createDirectories(packagePath);
+                String source = generateClass(servicePackage, i, serviceClasses, random);
+                Path filePath = packagePath.resolve(className(i) + ".java");
+                try (BufferedWriter out = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8)) {
+                    out.write(source);
+                }
+                bytes += Files.size(filePath);
+            }
+        }
+        return bytes;
+    }
+
+    private String generateClass(String servicePackage, int index, int serviceClasses, Random random) {
+        boolean isSubclass = (index % hierarchyDepth) != 0;
+        String name = className(index);
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(packageName(servicePackage, index)).append(";\n\n");
+        source.append("/**\n * Synthetic class ").append(index).append(" of ").append(servicePackage).append(".\n */\n");
+        source.append("public class ").append(name);
+        if (isSubclass)
+            source.append(" extends ").append(qualifiedName(servicePackage, index - 1));
+        source.append(" {\n");
+        source.append("    protected int state").append(index).append(" = ").append(index).append(";\n");
+        source.append("    private ").append(qualifiedName(servicePackage, random.nextInt(serviceClasses)))
+                .append(" peer;\n\n");
+        for (int method = 0; method < methodsPerClass; method++) {
+            source.append("    // step ").append(method).append(" of ").append(name).append("\n");
+            source.append("    public int m").append(method).append("(int value) {\n");
+            source.append("        int result = value + state").append(index).append(" + ").append(method)
+                    .append(";\n");
+            if (isSubclass && (method == 0))
+                source.append("        result += super.m0(value);\n");
+            for (int call = 0; call < callsPerMethod; call++) {
+                source.append("        result += new ")
+                        .append(qualifiedName(servicePackage, random.nextInt(serviceClasses)))
+                        .append("().m").append(random.nextInt(methodsPerClass)).append("(result);\n");
+            }
+            source.append("        return result;\n");
+            source.append("    }\n\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private static String className(int index) {
+        return "C" + index;
+    }
+
+    private static String packageName(String servicePackage, int index) {
+        return servicePackage + ".pkg" + (index / classesPerPackage);
+    }
+
+    private static String qualifiedName(String servicePackage, int index) {
+        return packageName(servicePackage, index) + "." + className(index);
+    }
+}
@@ -1,5 +1,6 @@
 package processors;
 
+import com.decomp.analysis.AnalysisProgress;
 import com.decomp.analysis.Class_;
 import com.decomp.analysis.Invocation_;
 import com.decomp.analysis.Method_;
@@ -9,20 +10,34 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spoon.Launcher;
 import spoon.OutputType;
+import spoon.reflect.declaration.CtType;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public class ASTParser {
     private String repoPath;
 
     private String appName;
     private boolean ignoreTest;
+    private Set<String> processedFiles = null;
+    private boolean skipText = false;
+    private boolean lazyContent = false;
+    private ResultSink resultSink = null;
     private static Logger logger = LoggerFactory.getLogger(ASTParser.class);
+    private static final Metrics metrics = Metrics.get();
 
     public String getRepoPath() {
         return repoPath;
@@ -41,6 +56,30 @@ public class ASTParser {
     }
 
 
+    public boolean isSkipText() {
+        return skipText;
+    }
+
+    public void setSkipText(boolean skipText) {
+        this.skipText = skipText;
+    }
+
+    public boolean isLazyContent() {
+        return lazyContent;
+    }
+
+    public void setLazyContent(boolean lazyContent) {
+        this.lazyContent = lazyContent;
+    }
+
+    public ResultSink getResultSink() {
+        return resultSink;
+    }
+
+    public void setResultSink(ResultSink resultSink) {
+        this.resultSink = resultSink;
+    }
+
     public ASTParser(String repoPath, String appName, boolean ignoreTest) {
         this.repoPath = repoPath;
         this.appName = appName;
@@ -70,11 +109,9 @@ public class ASTParser {
                         found.add(path+"/java");
                 }
                 else {
-                    try {
-                        Files.list(file.toPath())
-                                .forEach(p -> {
-                                    find_src(p.toString(), found, ignoreTest);
-                                });
+                    // the listing is closed to release the directory handle
+                    try (Stream<Path> paths = Files.list(file.toPath())) {
+                        paths.forEach(p -> find_src(p.toString(), found, ignoreTest));
                     }
                     catch (IOException e){
                         logger.info(e.toString());
@@ -85,12 +122,14 @@ public class ASTParser {
     }
 
     public Triple<List<Class_>, List<Method_>, List<Invocation_>> analyze() {
+        AnalysisEvents.Analysis event = new AnalysisEvents.Analysis();
+        event.begin();
         logger.info("Starting analysis for project " + appName);
         logger.info("Creating Spoon Launcher");
         Launcher launcher = new Launcher();
         launcher.getEnvironment().setOutputType(OutputType.NO_OUTPUT);
         ArrayList<String> input_paths = new ArrayList<>();
-        find_src(repoPath, input_paths, this.ignoreTest);
+        metrics.time(Metrics.SOURCE_DISCOVERY, () -> find_src(repoPath, input_paths, this.ignoreTest));
         //launcher.getEnvironment().setIgnoreDuplicateDeclarations(true);
         for (String input_path : input_paths){
             logger.info("Adding PATH \"" + input_path + "\" as source");
@@ -100,22 +139,154 @@ public class ASTParser {
         ArrayList<Class_> objects = new ArrayList<Class_>();
         ArrayList<Method_> methods = new ArrayList<Method_>();
         TypeProcessor typeProcessor = new TypeProcessor(objects, methods, appName);
-        launcher.addProcessor(typeProcessor);
+        typeProcessor.setSkipText(skipText);
+        typeProcessor.setLazyContent(lazyContent);
+        typeProcessor.setResultSink(resultSink);
         logger.info("Creating invocation processor");
         InvocationProcessor invocationProcessor = new InvocationProcessor(objects, methods, appName);
-        launcher.addProcessor(invocationProcessor);
+        invocationProcessor.setNames(typeProcessor.getNames());
+        logger.info("Building model");
+        reportProgress(AnalysisProgress.Stage.BUILDING_MODEL, 0, input_paths.size());
+        metrics.time(Metrics.MODEL_BUILD, () -> launcher.buildModel());
+        reportProgress(AnalysisProgress.Stage.BUILDING_MODEL, input_paths.size(), input_paths.size());
         logger.info("Starting process");
-        launcher.run();
+        ModelScanner scanner = new ModelScanner();
+        metrics.time(Metrics.MODEL_SCAN, () -> scanner.scan(launcher.getModel().getRootPackage()));
+        scanner.process(typeProcessor, invocationProcessor);
         logger.info("Process finished successfully");
         logger.info("Detected " + typeProcessor.getObjects().size() + " classes and interfaces");
         logger.info("Detected " + typeProcessor.getMethods().size() + " methods");
         logger.info("Found " + invocationProcessor.successfulMatches + " successful matches and " +
                 invocationProcessor.failedMatches + " failed matches");
+        commit(event, "full", input_paths.size(), typeProcessor, invocationProcessor);
         return new ImmutableTriple<>(
                 typeProcessor.getObjects(), typeProcessor.getMethods(), invocationProcessor.getFailedMaps());
 
     }
 
+    private void reportProgress(AnalysisProgress.Stage stage, long completed, long total) {
+        if (resultSink != null)
+            resultSink.progress(stage, "", completed, total);
+    }
+
+    static void commit(AnalysisEvents.Analysis event, String mode, int sourceRoots, TypeProcessor typeProcessor,
+                       InvocationProcessor invocationProcessor) {
+        if (event.shouldCommit()) {
+            event.appName = typeProcessor.getAppName();
+            event.serviceName = typeProcessor.getServiceName();
+            event.mode = mode;
+            event.sourceRoots = sourceRoots;
+            event.classes = typeProcessor.getObjects().size();
+            event.methods = typeProcessor.getMethods().size();
+            event.successfulMatches = invocationProcessor.successfulMatches;
+            event.failedMatches = invocationProcessor.failedMatches;
+            event.commit();
+        }
+    }
+
+    public List<String> findSourceFiles() throws IOException {
+        ArrayList<String> input_paths = new ArrayList<>();
+        find_src(repoPath, input_paths, this.ignoreTest);
+        List<String> sourceFiles = new ArrayList<>();
+        for (String input_path : input_paths){
+            try (Stream<Path> paths = Files.walk(Path.of(input_path))) {
+                paths.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".java"))
+                        .forEach(p -> sourceFiles.add(p.toAbsolutePath().normalize().toString()));
+            }
+        }
+        return sourceFiles;
+    }
+
+    public Triple<List<Class_>, List<Method_>, List<Invocation_>> analyze(Set<String> changedFiles,
+                                                                         List<Class_> previousClasses) {
+        AnalysisEvents.Analysis event = new AnalysisEvents.Analysis();
+        event.begin();
+        logger.info("Starting incremental analysis for project " + appName + " with " + changedFiles.size() +
+                " changed files");
+        Launcher launcher = new Launcher();
+        launcher.getEnvironment().setOutputType(OutputType.NO_OUTPUT);
+        ArrayList<String> input_paths = new ArrayList<>();
+        metrics.time(Metrics.SOURCE_DISCOVERY, () -> find_src(repoPath, input_paths, this.ignoreTest));
+        for (String input_path : input_paths){
+            logger.info("Adding PATH \"" + input_path + "\" as source");
+            launcher.addInputResource(input_path);
+        }
+        // the whole model is still needed to resolve references but only the affected types are processed
+        logger.info("Building model");
+        reportProgress(AnalysisProgress.Stage.BUILDING_MODEL, 0, input_paths.size());
+        metrics.time(Metrics.MODEL_BUILD, () -> launcher.buildModel());
+        reportProgress(AnalysisProgress.Stage.BUILDING_MODEL, input_paths.size(), input_paths.size());
+        ModelScanner scanner = new ModelScanner();
+        metrics.time(Metrics.MODEL_SCAN, () -> scanner.scan(launcher.getModel().getRootPackage()));
+        Set<String> changedTypes = new HashSet<>();
+        for (CtType<?> ctType : scanner.getTypes()){
+            if (changedFiles.contains(TypeProcessor.getFilePath(ctType)))
+                changedTypes.add(ctType.getQualifiedName());
+        }
+        Map<String, String> previousFiles = new HashMap<>();
+        for (Class_ class_ : previousClasses){
+            String filePath = Path.of(class_.getFilePath()).toAbsolutePath().normalize().toString();
+            previousFiles.put(class_.getFullName(), filePath);
+            if (changedFiles.contains(filePath))
+                changedTypes.add(class_.getFullName());
+        }
+        processedFiles = new HashSet<>(changedFiles);
+        // types referencing a changed type are reprocessed to update their invocations and subtypes are
+        // reprocessed transitively to update their inherited methods
+        Set<String> affectedTypes = new HashSet<>(changedTypes);
+        Map<String, List<String>> subTypes = new HashMap<>();
+        for (Class_ class_ : previousClasses){
+            if (class_.getReferencedTypesList().stream().anyMatch(changedTypes::contains))
+                affectedTypes.add(class_.getFullName());
+            for (String inheritedType : class_.getInheritedTypesList())
+                subTypes.computeIfAbsent(inheritedType, k -> new ArrayList<>()).add(class_.getFullName());
+        }
+        Set<String> visited = new HashSet<>(changedTypes);
+        Deque<String> inheritanceQueue = new ArrayDeque<>(changedTypes);
+        while (!inheritanceQueue.isEmpty()){
+            for (String subType : subTypes.getOrDefault(inheritanceQueue.poll(), Collections.emptyList())){
+                if (visited.add(subType)){
+                    affectedTypes.add(subType);
+                    inheritanceQueue.add(subType);
+                }
+            }
+        }
+        for (String typeName : affectedTypes){
+            if (previousFiles.containsKey(typeName))
+                processedFiles.add(previousFiles.get(typeName));
+        }
+        Set<String> knownTypes = new HashSet<>();
+        for (Class_ class_ : previousClasses){
+            if (!processedFiles.contains(previousFiles.get(class_.getFullName())))
+                knownTypes.add(class_.getFullName());
+        }
+        logger.info("Reprocessing " + processedFiles.size() + " files");
+        ArrayList<Class_> objects = new ArrayList<Class_>();
+        ArrayList<Method_> methods = new ArrayList<Method_>();
+        TypeProcessor typeProcessor = new TypeProcessor(objects, methods, appName);
+        typeProcessor.setSkipText(skipText);
+        typeProcessor.setLazyContent(lazyContent);
+        typeProcessor.setResultSink(resultSink);
+        typeProcessor.setFilesToProcess(processedFiles);
+        InvocationProcessor invocationProcessor = new InvocationProcessor(objects, methods, appName);
+        invocationProcessor.setNames(typeProcessor.getNames());
+        invocationProcessor.setFilesToProcess(processedFiles);
+        invocationProcessor.setKnownTypes(knownTypes);
+        scanner.process(typeProcessor, invocationProcessor);
+        logger.info("Process finished successfully");
+        logger.info("Detected " + typeProcessor.getObjects().size() + " classes and interfaces");
+        logger.info("Detected " + typeProcessor.getMethods().size() + " methods");
+        logger.info("Found " + invocationProcessor.successfulMatches + " successful matches and " +
+                invocationProcessor.failedMatches + " failed matches");
+        commit(event, "incremental", input_paths.size(), typeProcessor, invocationProcessor);
+        return new ImmutableTriple<>(
+                typeProcessor.getObjects(), typeProcessor.getMethods(), invocationProcessor.getFailedMaps());
+    }
+
+    public Set<String> getProcessedFiles() {
+        return processedFiles;
+    }
+
     public boolean getIgnoreTest() {
         return ignoreTest;
     }
@@ -0,0 +1,146 @@
+package processors;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+public class AnalysisEvents {
+    // Java Flight Recorder events of the analyses, savings and loadings. They are only built and committed while a
+    // recording is running, otherwise they are as cheap as the checks guarding them. Stack traces are not recorded
+    // since every event is emitted from a single place
+    private static final String category = "Java Analysis";
+
+    private AnalysisEvents() {
+    }
+
+    @Name("com.decomp.analysis.Analysis")
+    @Label("Analysis")
+    @Category(category)
+    @Description("Analysis of an application, or of one of the services of a distributed application.")
+    @StackTrace(false)
+    public static class Analysis extends Event {
+        @Label("Application")
+        public String appName;
+        @Label("Service")
+        public String serviceName;
+        @Label("Mode")
+        @Description("full, incremental, distributed or service.")
+        public String mode;
+        @Label("Source Roots")
+        public int sourceRoots;
+        @Label("Classes")
+        public int classes;
+        @Label("Methods")
+        public int methods;
+        @Label("Successful Matches")
+        public long successfulMatches;
+        @Label("Failed Matches")
+        public long failedMatches;
+    }
+
+    @Name("com.decomp.analysis.Phase")
+    @Label("Analysis Phase")
+    @Category(category)
+    @Description("Phase timed by the metrics of the process, see Metrics.")
+    @StackTrace(false)
+    public static class Phase extends Event {
+        @Label("Phase")
+        public String phase;
+    }
+
+    @Name("com.decomp.analysis.TypeProcessed")
+    @Label("Type Processed")
+    @Category(category)
+    @Description("Class, interface, enum or annotation processed by the type processor.")
+    @StackTrace(false)
+    public static class TypeProcessed extends Event {
+        @Label("Application")
+        public String appName;
+        @Label("Service")
+        public String serviceName;
+        @Label("Type")
+        public String typeName;
+        @Label("Methods")
+        @Description("Declared and inherited methods and constructors.")
+        public int methods;
+        @Label("Fields")
+        public int fields;
+    }
+
+    // there are several invocations per method so only the slowest ones are recorded by default
+    @Name("com.decomp.analysis.InvocationResolved")
+    @Label("Invocation Resolved")
+    @Category(category)
+    @Description("Lookup of the invoked and invoking methods of an invocation by the invocation processor.")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class InvocationResolved extends Event {
+        @Label("Application")
+        public String appName;
+        @Label("Service")
+        public String serviceName;
+        @Label("Invoking Type")
+        public String invokingType;
+        @Label("Invoked Method")
+        public String invokedMethod;
+        @Label("Outcome")
+        @Description("resolved, local, field call, unknown invoker or unresolved.")
+        public String outcome;
+    }
+
+    @Name("com.decomp.analysis.InvocationsProcessed")
+    @Label("Invocations Processed")
+    @Category(category)
+    @Description("Outcomes of all the invocations resolved by an invocation processor.")
+    @StackTrace(false)
+    public static class InvocationsProcessed extends Event {
+        @Label("Application")
+        public String appName;
+        @Label("Service")
+        public String serviceName;
+        @Label("Invocations")
+        public int invocations;
+        @Label("Successful Matches")
+        public long successfulMatches;
+        @Label("Failed Matches")
+        public long failedMatches;
+    }
+
+    @Name("com.decomp.analysis.ResultsSaved")
+    @Label("Results Saved")
+    @Category(category)
+    @Description("Saving of the results of an analysis with their indexes.")
+    @StackTrace(false)
+    public static class ResultsSaved extends Event {
+        @Label("Application")
+        public String appName;
+        @Label("Format")
+        public String format;
+        @Label("Classes")
+        public int classes;
+        @Label("Methods")
+        public int methods;
+        @Label("Invocations")
+        public int invocations;
+    }
+
+    @Name("com.decomp.analysis.ResultsLoaded")
+    @Label("Results Loaded")
+    @Category(category)
+    @Description("Loading of the saved classes, methods or invocations of an application from disk.")
+    @StackTrace(false)
+    public static class ResultsLoaded extends Event {
+        @Label("Application")
+        public String appName;
+        @Label("Kind")
+        public String kind;
+        @Label("Format")
+        public String format;
+        @Label("Records")
+        public long records;
+    }
+}
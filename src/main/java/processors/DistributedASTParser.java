@@ -1,5 +1,6 @@
 package processors;
 
+import com.decomp.analysis.AnalysisProgress;
 import com.decomp.analysis.Class_;
 import com.decomp.analysis.Invocation_;
 import com.decomp.analysis.Method_;
@@ -15,6 +16,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,7 +29,10 @@ public class DistributedASTParser extends ASTParser{
     private String appName;
     private boolean ignoreTest;
     private ArrayList<String> serviceNames;
+    private int maxWorkers;
     private static Logger logger = LoggerFactory.getLogger(DistributedASTParser.class);
+    private static final Metrics metrics = Metrics.get();
+    private static final int defaultMaxWorkers = Math.min(4, Runtime.getRuntime().availableProcessors());
 
 
     public DistributedASTParser(String repoPath, String appName, boolean ignoreTest) {
@@ -33,6 +41,21 @@ public class DistributedASTParser extends ASTParser{
         this.appName = appName;
         this.ignoreTest = ignoreTest;
         serviceNames = new ArrayList<>();
+        maxWorkers = Settings.getInt("ANALYSIS_WORKERS", defaultMaxWorkers, 1);
+    }
+
+    public DistributedASTParser(String repoPath, String appName, boolean ignoreTest, int maxWorkers) {
+        this(repoPath, appName, ignoreTest);
+        if (maxWorkers > 0)
+            this.maxWorkers = maxWorkers;
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public void setMaxWorkers(int maxWorkers) {
+        this.maxWorkers = maxWorkers;
     }
 
     public String findServiceName(String input_path, int it){
@@ -51,43 +74,98 @@ public class DistributedASTParser extends ASTParser{
     }
 
     public Triple<List<Class_>, List<Method_>, List<Invocation_>> analyze_one(String input_path, int it){
+        String serviceName = findServiceName(input_path, it);
+        serviceNames.add(serviceName);
+        return analyze_one(input_path, serviceName);
+    }
+
+    public Triple<List<Class_>, List<Method_>, List<Invocation_>> analyze_one(String input_path, String serviceName){
+        AnalysisEvents.Analysis event = new AnalysisEvents.Analysis();
+        event.begin();
         Launcher launcher = new Launcher();
         launcher.getEnvironment().setOutputType(OutputType.NO_OUTPUT);
-        String serviceName = findServiceName(input_path, it);
         logger.info("Working on microservice \"" + serviceName + "\" in '" + input_path + "'");
-        serviceNames.add(serviceName);
         launcher.addInputResource(input_path);
 
         ArrayList<Class_> objects = new ArrayList<Class_>();
         ArrayList<Method_> methods = new ArrayList<Method_>();
         TypeProcessor typeProcessor = new TypeProcessor(objects, methods, appName, serviceName);
-        launcher.addProcessor(typeProcessor);
+        typeProcessor.setSkipText(isSkipText());
+        typeProcessor.setLazyContent(isLazyContent());
+        typeProcessor.setResultSink(getResultSink());
         InvocationProcessor invocationProcessor = new InvocationProcessor(objects, methods, appName, serviceName);
-        launcher.addProcessor(invocationProcessor);
-        launcher.run();
+        invocationProcessor.setNames(typeProcessor.getNames());
+        if (getResultSink() != null)
+            getResultSink().progress(AnalysisProgress.Stage.BUILDING_MODEL, serviceName, 0, 1);
+        metrics.time(Metrics.MODEL_BUILD, () -> launcher.buildModel());
+        if (getResultSink() != null)
+            getResultSink().progress(AnalysisProgress.Stage.BUILDING_MODEL, serviceName, 1, 1);
+        ModelScanner scanner = new ModelScanner();
+        metrics.time(Metrics.MODEL_SCAN, () -> scanner.scan(launcher.getModel().getRootPackage()));
+        scanner.process(typeProcessor, invocationProcessor);
+        commit(event, "service", 1, typeProcessor, invocationProcessor);
         return new ImmutableTriple<>(objects, methods, invocationProcessor.getFailedMaps());
     }
 
     public Triple<List<Class_>, List<Method_>, List<Invocation_>> analyze() {
+        AnalysisEvents.Analysis event = new AnalysisEvents.Analysis();
+        event.begin();
         logger.info("Starting analysis for distributed project " + appName + " in path " + repoPath);
         ArrayList<String> input_paths = new ArrayList<>();
-        find_src(repoPath, input_paths, this.ignoreTest);
+        metrics.time(Metrics.SOURCE_DISCOVERY, () -> find_src(repoPath, input_paths, this.ignoreTest));
         ArrayList<Class_> allObjects = new ArrayList<>();
         ArrayList<Method_> allMethods = new ArrayList<>();
         ArrayList<Invocation_> allInvocations = new ArrayList<>();
         serviceNames = new ArrayList<>();
-        int it = 0;
-        for (String input_path : input_paths){
-            Triple<List<Class_>, List<Method_>, List<Invocation_>> analysisResults = analyze_one(input_path, it);
-            allObjects.addAll(analysisResults.getLeft());
-            allMethods.addAll(analysisResults.getMiddle());
-            allInvocations.addAll(analysisResults.getRight());
-            it++;
+        // names are assigned sequentially before any service is analyzed so that they do not depend on scheduling
+        for (int it = 0; it < input_paths.size(); it++){
+            serviceNames.add(findServiceName(input_paths.get(it), it));
+        }
+        int workers = Math.max(1, Math.min(maxWorkers, input_paths.size()));
+        logger.info("Analyzing " + input_paths.size() + " services with " + workers + " workers");
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Triple<List<Class_>, List<Method_>, List<Invocation_>>>> futures = new ArrayList<>();
+            for (int it = 0; it < input_paths.size(); it++){
+                final String input_path = input_paths.get(it);
+                final String serviceName = serviceNames.get(it);
+                futures.add(executor.submit(() -> analyze_one(input_path, serviceName)));
+            }
+            // results are merged in the order of the discovered source roots
+            for (Future<Triple<List<Class_>, List<Method_>, List<Invocation_>>> future : futures){
+                Triple<List<Class_>, List<Method_>, List<Invocation_>> analysisResults = future.get();
+                allObjects.addAll(analysisResults.getLeft());
+                allMethods.addAll(analysisResults.getMiddle());
+                allInvocations.addAll(analysisResults.getRight());
+            }
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Analysis of " + appName + " was interrupted", e);
+        }
+        catch (ExecutionException e){
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
         }
         logger.info("Process finished successfully");
         logger.info("Detected " + allObjects.size() + " classes and interfaces");
         logger.info("Detected " + allMethods.size() + " methods");
         logger.info("Found " + allInvocations.size() + " failed matches");
+        // the matches are committed by the events of the services
+        if (event.shouldCommit()) {
+            event.appName = appName;
+            event.mode = "distributed";
+            event.sourceRoots = input_paths.size();
+            event.classes = allObjects.size();
+            event.methods = allMethods.size();
+            event.commit();
+        }
         return new ImmutableTriple<>(allObjects, allMethods, allInvocations);
     }
 }
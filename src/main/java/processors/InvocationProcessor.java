@@ -18,7 +18,12 @@ import spoon.reflect.reference.CtExecutableReference;
 import spoon.reflect.reference.CtTypeReference;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class InvocationProcessor extends AbstractProcessor<CtInvocation> {
     private List<Class_> objects;
@@ -27,8 +32,17 @@ public class InvocationProcessor extends AbstractProcessor<CtInvocation> {
     public int successfulMatches = 0;
     public int failedMatches = 0;
     private List<Invocation_> failedMaps = new ArrayList<>();
+    private SymbolIndex symbolIndex = new SymbolIndex();
+    // invocations are collected per slot and only added to the protobuf messages once in processingDone
+    private Map<Integer, List<Invocation_>> fieldCalls = new HashMap<>();
+    private Map<Integer, List<Invocation_>> localInvocations = new HashMap<>();
+    private Map<Integer, List<Invocation_>> invocations = new HashMap<>();
+    // types analyzed in a previous run that are not part of the objects list
+    private Set<String> knownTypes = Collections.emptySet();
+    private Set<String> filesToProcess = null;
     private String appName;
     private String serviceName;
+    private NameInterner names = new NameInterner();
 
     public String getAppName() {
         return appName;
@@ -53,32 +67,21 @@ public class InvocationProcessor extends AbstractProcessor<CtInvocation> {
     }
 
     public Integer findMethod(String methodName){
-        int i = 0;
-        for (Method_ e:methods){
-            if (e.getFullName().equals(methodName))
-                return i;
-            i++;
-        }
-        logger.error("Method " + methodName + " not found!");
-        return null;
+        symbolIndex.sync(objects, methods);
+        Integer i = symbolIndex.findMethod(methodName);
+        if (i == null)
+            logger.error("Method " + methodName + " not found!");
+        return i;
     }
     public Integer findObject(String objectName){
-        int i = 0;
-        for (Class_ o:objects){
-            if (o.getFullName().equals(objectName))
-                return i;
-            i++;
-        }
-        return null;
+        symbolIndex.sync(objects, methods);
+        return symbolIndex.findObject(objectName);
     }
 
     public boolean isLocal(String className){
-        for (Class_ o:objects){
-            if (o.getFullName().equals(className))
-                return true;
-        }
+        symbolIndex.sync(objects, methods);
         //logger.error("Object " + className + " not found!");
-        return false;
+        return symbolIndex.isLocal(className) || knownTypes.contains(className);
     }
 
     public Pair<String, CtType> detectInvoker(CtExecutable invokerExe, CtInvocation ctInvocation){
@@ -120,14 +123,41 @@ public class InvocationProcessor extends AbstractProcessor<CtInvocation> {
         }
     }
 
+    @Override
+    public boolean isToBeProcessed(CtInvocation candidate) {
+        // implicit invocations have no position of their own so the file of the enclosing type is used
+        if (filesToProcess == null)
+            return true;
+        CtType parentType = candidate.getParent(CtType.class);
+        return (parentType != null) && filesToProcess.contains(TypeProcessor.getFilePath(parentType));
+    }
+
     @Override
     public void process(CtInvocation ctInvocation) {
+        AnalysisEvents.InvocationResolved event = new AnalysisEvents.InvocationResolved();
+        event.begin();
+        String outcome = resolve(ctInvocation);
+        event.end();
+        if (event.shouldCommit()) {
+            CtType invokingType = ctInvocation.getParent(CtType.class);
+            event.appName = getAppName();
+            event.serviceName = getServiceName();
+            event.invokingType = (invokingType != null) ? invokingType.getQualifiedName() : null;
+            event.invokedMethod = ctInvocation.getExecutable().getSignature();
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    // returns the outcome of the resolution
+    private String resolve(CtInvocation ctInvocation) {
         CtExecutable invokerExe = ctInvocation.getParent(CtExecutable.class);
         CtExecutableReference invokedMethod = ctInvocation.getExecutable();
         CtTypeReference invoked = invokedMethod.getDeclaringType();
         Pair<String, CtType> pair = detectInvoker(invokerExe, ctInvocation);
-        String invokerMethod = pair.getLeft();
+        String invokerMethod = names.intern(pair.getLeft());
         CtType invoker = pair.getRight();
+        String invokerName = names.intern(invoker.getQualifiedName());
         Invocation_.Builder invocation_ = Invocation_.newBuilder();
         invocation_.setAppName(this.getAppName());
         if (this.getServiceName()!=null)
@@ -136,42 +166,64 @@ public class InvocationProcessor extends AbstractProcessor<CtInvocation> {
 //            logger.info("Object \"" + invoker.getQualifiedName() + "\" has used \"" + invokedMethod.getSignature() +
 //                    "\" to invoke \"" + invoked.getQualifiedName() + "\"");
             successfulMatches++;
-            invocation_.setInvokedMethod(invokedMethod.getSignature());
-            invocation_.setInvokingObject(invoker.getQualifiedName());
+            String invokedName = names.intern(invoked.getQualifiedName());
+            invocation_.setInvokedMethod(names.intern(invokedMethod.getSignature()));
+            invocation_.setInvokingObject(invokerName);
             invocation_.setInvokingMethod(invokerMethod);
-            invocation_.setInvokedObject(invoked.getQualifiedName());
-            invocation_.setLocal(isLocal(invoked.getQualifiedName()));
+            invocation_.setInvokedObject(invokedName);
+            invocation_.setLocal(isLocal(invokedName));
             if (invokerMethod.equals("$$FIELDCALL$$")){
-                Integer object_id = findObject(invoker.getQualifiedName());
-                Class_.Builder object_ = objects.get(object_id).toBuilder();
-                object_.addFieldCalls(invocation_.build());
-                objects.set(object_id, object_.build());
-                return;
+                Integer object_id = findObject(invokerName);
+                if (object_id==null){
+                    failedMatches++;
+                    return "unknown invoker";
+                }
+                fieldCalls.computeIfAbsent(object_id, k -> new ArrayList<>()).add(invocation_.build());
+                return "field call";
             }
             else {
-                Integer method_id = findMethod(invoker.getQualifiedName() + "::" + invokerMethod);
+                Integer method_id = findMethod(invokerName + "::" + invokerMethod);
                 if (method_id==null){
                     failedMatches++;
-                    return;
+                    return "unknown invoker";
                 }
-                Method_.Builder method_ = methods.get(method_id).toBuilder();
                 if (invocation_.getLocal()){
-                    method_.addLocalInvocations(invocation_.build());
+                    localInvocations.computeIfAbsent(method_id, k -> new ArrayList<>()).add(invocation_.build());
+                    return "local";
                 }
-                else
-                    method_.addInvocations(invocation_.build());
-                methods.set(method_id, method_.build());
+                invocations.computeIfAbsent(method_id, k -> new ArrayList<>()).add(invocation_.build());
+                return "resolved";
             }
         }
         else {
             failedMatches++;
-            invocation_.setInvokedMethod(invokedMethod.getSignature());
-            invocation_.setInvokingObject(invoker.getQualifiedName());
+            invocation_.setInvokedMethod(names.intern(invokedMethod.getSignature()));
+            invocation_.setInvokingObject(invokerName);
             invocation_.setInvokingMethod(invokerMethod);
             invocation_.setInvokedObject("$$UNKNOWN$$");
             invocation_.setLocal(false);
             failedMaps.add(invocation_.build());
+            return "unresolved";
+        }
+    }
+
+    @Override
+    public void processingDone() {
+        for (Map.Entry<Integer, List<Invocation_>> entry: fieldCalls.entrySet()){
+            Integer object_id = entry.getKey();
+            objects.set(object_id, objects.get(object_id).toBuilder().addAllFieldCalls(entry.getValue()).build());
+        }
+        Set<Integer> method_ids = new HashSet<>(localInvocations.keySet());
+        method_ids.addAll(invocations.keySet());
+        for (Integer method_id: method_ids){
+            Method_.Builder method_ = methods.get(method_id).toBuilder();
+            method_.addAllLocalInvocations(localInvocations.getOrDefault(method_id, Collections.emptyList()));
+            method_.addAllInvocations(invocations.getOrDefault(method_id, Collections.emptyList()));
+            methods.set(method_id, method_.build());
         }
+        fieldCalls.clear();
+        localInvocations.clear();
+        invocations.clear();
     }
 
     public List<Invocation_> getFailedMaps() {
@@ -189,4 +241,28 @@ public class InvocationProcessor extends AbstractProcessor<CtInvocation> {
     public void setServiceName(String serviceName) {
         this.serviceName = serviceName;
     }
+
+    public Set<String> getKnownTypes() {
+        return knownTypes;
+    }
+
+    public void setKnownTypes(Set<String> knownTypes) {
+        this.knownTypes = knownTypes;
+    }
+
+    public Set<String> getFilesToProcess() {
+        return filesToProcess;
+    }
+
+    public void setFilesToProcess(Set<String> filesToProcess) {
+        this.filesToProcess = filesToProcess;
+    }
+
+    public NameInterner getNames() {
+        return names;
+    }
+
+    public void setNames(NameInterner names) {
+        this.names = names;
+    }
 }
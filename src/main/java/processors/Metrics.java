@@ -0,0 +1,223 @@
+package processors;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+public class Metrics {
+    // counters, gauges and phase durations of the whole process, exported in the Prometheus text format. Every metric
+    // family is declared here with its type and help text, its series are created the first time they are used
+    public static final String PHASE_DURATION = "analysis_phase_duration_seconds";
+    public static final String CLASSES_PROCESSED = "analysis_classes_processed_total";
+    public static final String METHODS_PROCESSED = "analysis_methods_processed_total";
+    public static final String INVOCATIONS_PROCESSED = "analysis_invocations_processed_total";
+    public static final String INVOCATION_MATCHES = "analysis_invocation_matches_total";
+    public static final String BYTES_WRITTEN = "analysis_bytes_written_total";
+    public static final String RPCS = "analysis_rpcs_total";
+    public static final String ACTIVE_RPCS = "analysis_active_rpcs";
+    public static final String CACHE_HITS = "analysis_cache_hits_total";
+    public static final String CACHE_MISSES = "analysis_cache_misses_total";
+    public static final String CACHE_EVICTIONS = "analysis_cache_evictions_total";
+    public static final String CACHE_USED_BYTES = "analysis_cache_used_bytes";
+    public static final String CACHE_MAX_BYTES = "analysis_cache_max_bytes";
+    public static final String QUEUED_ANALYSES = "analysis_queued_jobs";
+    public static final String RUNNING_ANALYSES = "analysis_running_jobs";
+    // phases of PHASE_DURATION
+    public static final String ANALYSIS = "analysis";
+    public static final String SOURCE_DISCOVERY = "source_discovery";
+    public static final String MODEL_BUILD = "model_build";
+    public static final String MODEL_SCAN = "model_scan";
+    public static final String TYPE_PROCESSING = "type_processing";
+    public static final String INVOCATION_PROCESSING = "invocation_processing";
+    public static final String JSON_CONVERSION = "json_conversion";
+    public static final String DISK_WRITE = "disk_write";
+    public static final String DISK_LOAD = "disk_load";
+    public static final String RPC_STREAMING = "rpc_streaming";
+    private static final double[] durationBuckets = {0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 300, 900};
+    private static final Metrics metrics = new Metrics();
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    private static class Family {
+        private final String type;
+        private final String help;
+        // keyed by the formatted labels
+        private final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        private Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private static class Histogram {
+        private final long[] bucketCounts = new long[durationBuckets.length];
+        private long count = 0;
+        private double sum = 0;
+
+        private synchronized void observe(double value) {
+            for (int i = 0; i < durationBuckets.length; i++) {
+                if (value <= durationBuckets[i])
+                    bucketCounts[i]++;
+            }
+            count++;
+            sum += value;
+        }
+    }
+
+    // the code of a timed phase, which can throw the checked exceptions of the code it runs
+    public interface TimedTask<E extends Exception> {
+        void run() throws E;
+    }
+
+    public interface TimedCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private Metrics() {
+        declare(PHASE_DURATION, "histogram", "Duration of the phases of the analyses, savings, loadings and RPCs.");
+        declare(CLASSES_PROCESSED, "counter", "Classes and interfaces processed by the type processor.");
+        declare(METHODS_PROCESSED, "counter", "Methods and constructors processed by the type processor.");
+        declare(INVOCATIONS_PROCESSED, "counter", "Invocations processed by the invocation processor.");
+        declare(INVOCATION_MATCHES, "counter", "Invocations matched or not to an analyzed method.");
+        declare(BYTES_WRITTEN, "counter", "Bytes of results, indexes and manifests written to disk.");
+        declare(RPCS, "counter", "Finished RPCs by method and status code.");
+        declare(ACTIVE_RPCS, "gauge", "RPCs being served.");
+        declare(CACHE_HITS, "counter", "Loadings served by the result cache.");
+        declare(CACHE_MISSES, "counter", "Loadings not found in the result cache.");
+        declare(CACHE_EVICTIONS, "counter", "Results evicted from the result cache.");
+        declare(CACHE_USED_BYTES, "gauge", "Serialized size of the results in the result cache.");
+        declare(CACHE_MAX_BYTES, "gauge", "Capacity of the result cache.");
+        declare(QUEUED_ANALYSES, "gauge", "Analyses waiting for a worker.");
+        declare(RUNNING_ANALYSES, "gauge", "Analyses being run by a worker.");
+    }
+
+    public static Metrics get() {
+        return metrics;
+    }
+
+    private void declare(String name, String type, String help) {
+        families.put(name, new Family(type, help));
+    }
+
+    private Object series(String name, Supplier<Object> creator, String... labels) {
+        Family family = families.get(name);
+        if (family == null)
+            throw new IllegalArgumentException("Unknown metric " + name);
+        return family.series.computeIfAbsent(formatLabels(labels), k -> creator.get());
+    }
+
+    // the labels are given as name and value pairs
+    private static String formatLabels(String... labels) {
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (formatted.length() > 0)
+                formatted.append(',');
+            formatted.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return formatted.toString();
+    }
+
+    public void count(String name, long amount, String... labels) {
+        ((LongAdder) series(name, LongAdder::new, labels)).add(amount);
+    }
+
+    public void add(String name, long delta, String... labels) {
+        ((AtomicLong) series(name, AtomicLong::new, labels)).addAndGet(delta);
+    }
+
+    // for the values that are already kept elsewhere, like the statistics of the result cache
+    public void register(String name, LongSupplier value, String... labels) {
+        Family family = families.get(name);
+        if (family == null)
+            throw new IllegalArgumentException("Unknown metric " + name);
+        family.series.put(formatLabels(labels), value);
+    }
+
+    public void observe(String phase, long nanos) {
+        ((Histogram) series(PHASE_DURATION, Histogram::new, "phase", phase)).observe(nanos / 1e9);
+    }
+
+    public <E extends Exception> void time(String phase, TimedTask<E> task) throws E {
+        time(phase, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // the timed phases are also recorded as flight recorder events, which are only committed during a recording
+    public <T, E extends Exception> T time(String phase, TimedCall<T, E> call) throws E {
+        long start = System.nanoTime();
+        AnalysisEvents.Phase event = new AnalysisEvents.Phase();
+        event.begin();
+        try {
+            return call.call();
+        }
+        finally {
+            observe(phase, System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.phase = phase;
+                event.commit();
+            }
+        }
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> series : new TreeMap<>(family.series).entrySet()) {
+                String labels = series.getKey();
+                Object value = series.getValue();
+                if (value instanceof Histogram)
+                    appendHistogram(out, name, labels, (Histogram) value);
+                else
+                    appendSample(out, name, labels, String.valueOf(longValue(value)));
+            }
+        }
+        return out.toString();
+    }
+
+    private static long longValue(Object value) {
+        if (value instanceof LongAdder)
+            return ((LongAdder) value).sum();
+        if (value instanceof AtomicLong)
+            return ((AtomicLong) value).get();
+        return ((LongSupplier) value).getAsLong();
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long[] bucketCounts;
+        long count;
+        double sum;
+        synchronized (histogram) {
+            bucketCounts = Arrays.copyOf(histogram.bucketCounts, histogram.bucketCounts.length);
+            count = histogram.count;
+            sum = histogram.sum;
+        }
+        String separator = labels.isEmpty() ? "" : labels + ",";
+        for (int i = 0; i < durationBuckets.length; i++)
+            appendSample(out, name + "_bucket", separator + "le=\"" + durationBuckets[i] + "\"",
+                    String.valueOf(bucketCounts[i]));
+        appendSample(out, name + "_bucket", separator + "le=\"+Inf\"", String.valueOf(count));
+        appendSample(out, name + "_sum", labels, String.valueOf(sum));
+        appendSample(out, name + "_count", labels, String.valueOf(count));
+    }
+
+    private static void appendSample(StringBuilder out, String name, String labels, String value) {
+        out.append(name);
+        if (!labels.isEmpty())
+            out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+}
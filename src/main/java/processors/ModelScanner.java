@@ -0,0 +1,232 @@
+package processors;
+
+import com.decomp.analysis.AnalysisProgress;
+import spoon.reflect.code.CtFieldWrite;
+import spoon.reflect.code.CtInvocation;
+import spoon.reflect.declaration.CtAnnotationType;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtConstructor;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtEnum;
+import spoon.reflect.declaration.CtInterface;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.declaration.CtTypeMember;
+import spoon.reflect.path.CtRole;
+import spoon.reflect.reference.CtArrayTypeReference;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtFieldReference;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.reflect.reference.CtVariableReference;
+import spoon.reflect.visitor.CtScanner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ModelScanner extends CtScanner {
+    // walks the model once and collects what the type and invocation processors need: the types and invocations in
+    // the order Spoon processors visit them (children first), and for every type, method and constructor the results
+    // of getReferencedTypes() and getElements(new TypeFilter(CtVariableReference.class)), which would otherwise walk
+    // each of them again. Type references follow the rules of Spoon's TypeReferenceScanner and are added in the same
+    // order so that the sets iterate the same way.
+    private final List<CtType<?>> types = new ArrayList<>();
+    private final List<CtInvocation<?>> invocations = new ArrayList<>();
+    private final Map<CtElement, Set<CtTypeReference<?>>> referencedTypes = new IdentityHashMap<>();
+    private final Map<CtElement, List<CtVariableReference<?>>> variableReferences = new IdentityHashMap<>();
+    private final List<Set<CtTypeReference<?>>> openReferencedTypes = new ArrayList<>();
+    private final List<List<CtVariableReference<?>>> openVariableReferences = new ArrayList<>();
+    // references that getReferencedTypes() does not follow are still walked for the other elements they hold
+    private int hiddenReferences = 0;
+    private int referencesOnly = 0;
+    private static final int progressStep = 100;
+
+    public List<CtType<?>> getTypes() {
+        return types;
+    }
+
+    public List<CtInvocation<?>> getInvocations() {
+        return invocations;
+    }
+
+    // null when the element was not part of the scanned model
+    public Set<CtTypeReference<?>> getReferencedTypes(CtElement element) {
+        return referencedTypes.get(element);
+    }
+
+    public List<CtVariableReference<?>> getVariableReferences(CtElement element) {
+        return variableReferences.get(element);
+    }
+
+    // runs both processors on the collected elements, all the types before the invocations as Spoon would
+    public void process(TypeProcessor typeProcessor, InvocationProcessor invocationProcessor) {
+        Metrics metrics = Metrics.get();
+        typeProcessor.setScanner(this);
+        ResultSink resultSink = typeProcessor.getResultSink();
+        String task = (typeProcessor.getServiceName() == null) ? "" : typeProcessor.getServiceName();
+        metrics.time(Metrics.TYPE_PROCESSING, () -> {
+            int scanned = 0;
+            for (CtType<?> ctType : types) {
+                if (typeProcessor.isToBeProcessed(ctType))
+                    typeProcessor.process(ctType);
+                reportProgress(resultSink, AnalysisProgress.Stage.PROCESSING_TYPES, task, ++scanned, types.size());
+            }
+            typeProcessor.processingDone();
+        });
+        metrics.count(Metrics.CLASSES_PROCESSED, typeProcessor.getObjects().size());
+        metrics.count(Metrics.METHODS_PROCESSED, typeProcessor.getMethods().size());
+        AnalysisEvents.InvocationsProcessed event = new AnalysisEvents.InvocationsProcessed();
+        event.begin();
+        int processedInvocations = metrics.time(Metrics.INVOCATION_PROCESSING, () -> {
+            int processed = 0;
+            int scanned = 0;
+            for (CtInvocation<?> ctInvocation : invocations) {
+                if (invocationProcessor.isToBeProcessed(ctInvocation)) {
+                    invocationProcessor.process(ctInvocation);
+                    processed++;
+                }
+                reportProgress(resultSink, AnalysisProgress.Stage.PROCESSING_INVOCATIONS, task, ++scanned,
+                        invocations.size());
+            }
+            invocationProcessor.processingDone();
+            return processed;
+        });
+        if (event.shouldCommit()) {
+            event.appName = invocationProcessor.getAppName();
+            event.serviceName = invocationProcessor.getServiceName();
+            event.invocations = processedInvocations;
+            event.successfulMatches = invocationProcessor.successfulMatches;
+            event.failedMatches = invocationProcessor.failedMatches;
+            event.commit();
+        }
+        metrics.count(Metrics.INVOCATIONS_PROCESSED, processedInvocations);
+        metrics.count(Metrics.INVOCATION_MATCHES, invocationProcessor.successfulMatches, "result", "successful");
+        metrics.count(Metrics.INVOCATION_MATCHES, invocationProcessor.failedMatches, "result", "failed");
+    }
+
+    // the progress is reported in steps since there can be many types and invocations
+    private static void reportProgress(ResultSink resultSink, AnalysisProgress.Stage stage, String task, int completed,
+                                       int total) {
+        if ((resultSink != null) && ((completed % progressStep == 0) || (completed == total)))
+            resultSink.progress(stage, task, completed, total);
+    }
+
+    @Override
+    public void scan(CtElement element) {
+        if (element == null)
+            return;
+        if (referencesOnly > 0) {
+            super.scan(element);
+            return;
+        }
+        if (element instanceof CtVariableReference) {
+            for (List<CtVariableReference<?>> open : openVariableReferences)
+                open.add((CtVariableReference<?>) element);
+        }
+        boolean isType = element instanceof CtType;
+        boolean isExecutable = (element instanceof CtMethod) || (element instanceof CtConstructor);
+        if (isType || isExecutable) {
+            Set<CtTypeReference<?>> elementTypes = new HashSet<>();
+            openReferencedTypes.add(elementTypes);
+            if (isExecutable)
+                openVariableReferences.add(new ArrayList<>());
+            super.scan(element);
+            if (isExecutable)
+                variableReferences.put(element, openVariableReferences.remove(openVariableReferences.size() - 1));
+            referencedTypes.put(element, openReferencedTypes.remove(openReferencedTypes.size() - 1));
+        }
+        else
+            super.scan(element);
+        if (isType)
+            types.add((CtType<?>) element);
+        else if (element instanceof CtInvocation)
+            invocations.add((CtInvocation<?>) element);
+    }
+
+    private void addReference(CtTypeReference<?> reference) {
+        if (hiddenReferences > 0)
+            return;
+        for (Set<CtTypeReference<?>> open : openReferencedTypes)
+            open.add(reference);
+    }
+
+    private void addTypeReferences(CtType<?> ctType) {
+        addReference(ctType.getReference());
+        for (CtTypeMember member : ctType.getTypeMembers()) {
+            if (member instanceof CtType)
+                addReference(((CtType<?>) member).getReference());
+        }
+    }
+
+    @Override
+    public <T> void visitCtTypeReference(CtTypeReference<T> reference) {
+        if (!(reference instanceof CtArrayTypeReference))
+            addReference(reference);
+        super.visitCtTypeReference(reference);
+    }
+
+    @Override
+    public <T> void visitCtClass(CtClass<T> ctClass) {
+        addTypeReferences(ctClass);
+        super.visitCtClass(ctClass);
+    }
+
+    @Override
+    public <T> void visitCtInterface(CtInterface<T> ctInterface) {
+        addTypeReferences(ctInterface);
+        super.visitCtInterface(ctInterface);
+    }
+
+    @Override
+    public <T extends Enum<?>> void visitCtEnum(CtEnum<T> ctEnum) {
+        addReference(ctEnum.getReference());
+        super.visitCtEnum(ctEnum);
+    }
+
+    @Override
+    public <A extends java.lang.annotation.Annotation> void visitCtAnnotationType(CtAnnotationType<A> annotationType) {
+        addReference(annotationType.getReference());
+        super.visitCtAnnotationType(annotationType);
+    }
+
+    @Override
+    public <T> void visitCtFieldWrite(CtFieldWrite<T> fieldWrite) {
+        // getReferencedTypes() adds the references of the written field before the ones of its target
+        referencesOnly++;
+        scan(fieldWrite.getVariable());
+        referencesOnly--;
+        super.visitCtFieldWrite(fieldWrite);
+    }
+
+    @Override
+    public <T> void visitCtFieldReference(CtFieldReference<T> reference) {
+        // only the declaring type of a field counts as referenced
+        enter(reference);
+        scan(CtRole.DECLARING_TYPE, reference.getDeclaringType());
+        hiddenReferences++;
+        scan(CtRole.TYPE, reference.getType());
+        scan(CtRole.ANNOTATION, reference.getAnnotations());
+        hiddenReferences--;
+        exit(reference);
+    }
+
+    @Override
+    public <T> void visitCtExecutableReference(CtExecutableReference<T> reference) {
+        // only the declaring type and the type arguments of an executable count as referenced
+        enter(reference);
+        scan(CtRole.DECLARING_TYPE, reference.getDeclaringType());
+        hiddenReferences++;
+        scan(CtRole.TYPE, reference.getType());
+        scan(CtRole.ARGUMENT_TYPE, reference.getParameters());
+        hiddenReferences--;
+        scan(CtRole.TYPE_ARGUMENT, reference.getActualTypeArguments());
+        hiddenReferences++;
+        scan(CtRole.ANNOTATION, reference.getAnnotations());
+        scan(CtRole.COMMENT, reference.getComments());
+        hiddenReferences--;
+        exit(reference);
+    }
+}
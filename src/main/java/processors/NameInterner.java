@@ -0,0 +1,20 @@
+package processors;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class NameInterner {
+    // shares a single instance of every qualified name between the results of an analysis
+    private final Map<String, String> names = new HashMap<>();
+
+    public String intern(String name) {
+        if (name == null)
+            return null;
+        String existing = names.putIfAbsent(name, name);
+        return (existing == null) ? name : existing;
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,21 @@
+package processors;
+
+import com.decomp.analysis.AnalysisProgress;
+import com.decomp.analysis.Class_;
+import com.decomp.analysis.Method_;
+
+public interface ResultSink {
+    // receives the types and methods as soon as they are parsed, before the invocations are attached to them
+    void acceptClass(Class_ class_);
+
+    void acceptMethod(Method_ method_);
+
+    // receives the progress of the analysis, the total is 0 when it is unknown
+    default void progress(AnalysisProgress.Stage stage, String task, long completed, long total) {
+    }
+
+    // for the steps that can stop on their own, like the Git operations
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,71 @@
+package processors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class Settings {
+    // values of the environment variables, a missing value gives the default one and an invalid value is reported
+    // before the default one is used instead of stopping the service
+    private static final Logger logger = LoggerFactory.getLogger(Settings.class);
+
+    public static int getInt(String name, int defaultValue, int minimum) {
+        String envVar = System.getenv(name);
+        if (envVar == null)
+            return defaultValue;
+        try {
+            int value = Integer.parseInt(envVar.trim());
+            if (value >= minimum)
+                return value;
+        }
+        catch (NumberFormatException e) {
+            ;
+        }
+        return invalid(name, envVar, "an integer of at least " + minimum, defaultValue);
+    }
+
+    public static long getLong(String name, long defaultValue, long minimum) {
+        String envVar = System.getenv(name);
+        if (envVar == null)
+            return defaultValue;
+        try {
+            long value = Long.parseLong(envVar.trim());
+            if (value >= minimum)
+                return value;
+        }
+        catch (NumberFormatException e) {
+            ;
+        }
+        return invalid(name, envVar, "an integer of at least " + minimum, defaultValue);
+    }
+
+    public static boolean getBoolean(String name) {
+        String envVar = System.getenv(name);
+        if (envVar == null)
+            return false;
+        if (envVar.trim().equalsIgnoreCase("true"))
+            return true;
+        if (envVar.trim().equalsIgnoreCase("false"))
+            return false;
+        return invalid(name, envVar, "true or false", false);
+    }
+
+    public static <E extends Enum<E>> E getEnum(String name, Class<E> type, E defaultValue) {
+        String envVar = System.getenv(name);
+        if (envVar == null)
+            return defaultValue;
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(envVar.trim()))
+                return constant;
+        }
+        StringBuilder expected = new StringBuilder("one of");
+        for (E constant : type.getEnumConstants())
+            expected.append(' ').append(constant.name());
+        return invalid(name, envVar, expected.toString(), defaultValue);
+    }
+
+    private static <T> T invalid(String name, String envVar, String expected, T defaultValue) {
+        logger.warn("Invalid value \"" + envVar + "\" for " + name + ", expected " + expected + ". Using " +
+                defaultValue + " instead");
+        return defaultValue;
+    }
+}
@@ -0,0 +1,45 @@
+package processors;
+
+import com.decomp.analysis.Class_;
+import com.decomp.analysis.Method_;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SymbolIndex {
+    // maps the full name of each detected type and method to its position in the shared lists
+    private final Map<String, Integer> objectSlots = new HashMap<>();
+    private final Map<String, Integer> methodSlots = new HashMap<>();
+    private int indexedObjects = 0;
+    private int indexedMethods = 0;
+
+    private void addObject(String fullName, int slot) {
+        // keep the first match to preserve the behavior of a linear scan
+        objectSlots.putIfAbsent(fullName, slot);
+    }
+
+    private void addMethod(String fullName, int slot) {
+        methodSlots.putIfAbsent(fullName, slot);
+    }
+
+    public void sync(List<Class_> objects, List<Method_> methods) {
+        // index the elements that were added to the lists since the last call
+        for (; indexedObjects < objects.size(); indexedObjects++)
+            addObject(objects.get(indexedObjects).getFullName(), indexedObjects);
+        for (; indexedMethods < methods.size(); indexedMethods++)
+            addMethod(methods.get(indexedMethods).getFullName(), indexedMethods);
+    }
+
+    public Integer findObject(String fullName) {
+        return objectSlots.get(fullName);
+    }
+
+    public Integer findMethod(String fullName) {
+        return methodSlots.get(fullName);
+    }
+
+    public boolean isLocal(String className) {
+        return objectSlots.containsKey(className);
+    }
+}
@@ -2,17 +2,26 @@ package processors;
 
 import com.decomp.analysis.Class_;
 import com.decomp.analysis.Method_;
+import com.decomp.analysis.SourceRange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spoon.processing.AbstractProcessor;
+import spoon.reflect.cu.SourcePosition;
 import spoon.reflect.declaration.*;
 import spoon.reflect.reference.CtFieldReference;
 import spoon.reflect.reference.CtTypeReference;
 import spoon.reflect.reference.CtVariableReference;
+import spoon.reflect.visitor.filter.AllTypeMembersFunction;
 import spoon.reflect.visitor.filter.TypeFilter;
+import spoon.support.visitor.ClassTypingContext;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class TypeProcessor extends AbstractProcessor<CtType> {
     private List<Class_> objects;
@@ -20,6 +29,16 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
     private Logger logger = LoggerFactory.getLogger(TypeProcessor.class);
     private String appName;
     private String serviceName;
+    private Set<String> filesToProcess = null;
+    // skips the source code and the textual terms of types and methods when they are never needed
+    private boolean skipText = false;
+    // keeps only the source range of types and methods instead of printing their source code, which is read back
+    // from the files when needed
+    private boolean lazyContent = false;
+    private ResultSink resultSink = null;
+    private NameInterner names = new NameInterner();
+    private ModelScanner scanner = null;
+    private final Map<CtExecutable<?>, ParsedMethod> parsedMethods = new IdentityHashMap<>();
     public String getAppName() {
         return appName;
     }
@@ -102,7 +121,7 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
         List<String> fieldTypes = new ArrayList<>(ctType.getFields().size());
         for (Object f: ctType.getAllFields()){
             CtFieldReference field = (CtFieldReference) f;
-            fieldTypes.add(field.getType().getQualifiedName());
+            fieldTypes.add(names.intern(field.getType().getQualifiedName()));
             textAndNames.add(field.getSimpleName());
             //f.getReferencedTypes().forEach(type -> fieldTypes.add(type.getQualifiedName()));
         }
@@ -113,7 +132,7 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
         List<String> nestedTypes = new ArrayList<>(ctType.getNestedTypes().size());
         for (Object t: ctType.getNestedTypes()){
             CtType type = (CtType) t;
-            nestedTypes.add(type.getQualifiedName());
+            nestedTypes.add(names.intern(type.getQualifiedName()));
             textAndNames.add(type.getSimpleName());
         }
         object_.addAllNestedTypes(nestedTypes);
@@ -123,36 +142,82 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
         List<String> inheritedTypes = new ArrayList<>();
         CtTypeReference superClass = ctType.getSuperclass();
         if (superClass != null){
-            inheritedTypes.add(superClass.getQualifiedName());
+            inheritedTypes.add(names.intern(superClass.getQualifiedName()));
         }
-        ctType.getSuperInterfaces().forEach(ref -> inheritedTypes.add(ref.getQualifiedName()));
+        ctType.getSuperInterfaces().forEach(ref -> inheritedTypes.add(names.intern(ref.getQualifiedName())));
         object_.addAllInheritedTypes(inheritedTypes);
     }
 
+    // the parts of a parsed method that do not depend on the type it belongs to
+    private static class ParsedMethod {
+        private final Method_ method_;
+        private final String returnType;
+        private final List<String> parameterTypes;
+        private final String signature;
+        private final List<String> textAndNames;
+
+        private ParsedMethod(Method_ method_, String returnType, List<String> parameterTypes, String signature,
+                             List<String> textAndNames) {
+            this.method_ = method_;
+            this.returnType = returnType;
+            this.parameterTypes = parameterTypes;
+            this.signature = signature;
+            this.textAndNames = textAndNames;
+        }
+    }
+
+    // inherited methods are parsed once and reused for every type that inherits them
     private void parseMethod(CtExecutable method, Method_.Builder method_, CtType ctType, List<String> textAndNames,
                              List<String> parameterTypes, List<String> returnTypes, List<String> classMethods,
                              boolean isConstructor) {
+        ParsedMethod parsedMethod = parsedMethods.get(method);
+        if (parsedMethod == null) {
+            parsedMethod = parseExecutable(method, isConstructor);
+            parsedMethods.put(method, parsedMethod);
+        }
+        method_.mergeFrom(parsedMethod.method_);
+        String parentName = names.intern(ctType.getQualifiedName());
+        method_.setParentName(parentName);
+        if (parsedMethod.returnType != null)
+            returnTypes.add(parsedMethod.returnType);
+        parameterTypes.addAll(parsedMethod.parameterTypes);
+        textAndNames.addAll(parsedMethod.textAndNames);
+        classMethods.add(parsedMethod.signature);
+        //methodName = ctType.getQualifiedName() + "::" + methodName;
+        method_.setFullName(names.intern(parentName + "::" + parsedMethod.signature));
+        method_.setAppName(this.getAppName());
+        if (this.getServiceName()!=null)
+            method_.setServiceName(this.getServiceName());
+    }
+
+    private ParsedMethod parseExecutable(CtExecutable method, boolean isConstructor) {
+        Method_.Builder method_ = Method_.newBuilder();
         List<String> methodTextAndNames = new ArrayList<>();
         // start executable
         method_.setIsLambda(false);
         method_.setIsConstructor(isConstructor);
         method_.setSimpleName(method.getSimpleName());
-        method_.setParentName(ctType.getQualifiedName());
         // find if method contains source code in the repository or is inherited from a third party package
         if (method.getPosition().isValidPosition()) {
-            method_.setContent(method.toString());
+            if (!skipText && !lazyContent)
+                method_.setContent(method.toString());
             method_.setIsLocal(true);
         }
         else{
-            method_.setContent(method.toString());
+            if (!skipText && !lazyContent)
+                method_.setContent(method.toString());
             method_.setIsLocal(false);
         }
+        SourceRange sourceRange = getSourceRange(method);
+        if (sourceRange != null)
+            method_.setSourceRange(sourceRange);
         // get return type
+        String returnType = null;
         if (isConstructor)
             method_.setReturnType("void");
         else {
-            returnTypes.add(method.getType().getQualifiedName());
-            method_.setReturnType(method.getType().getQualifiedName());
+            returnType = names.intern(method.getType().getQualifiedName());
+            method_.setReturnType(returnType);
         }
         // get parameters
         List<String> parameters = new ArrayList<>();
@@ -160,46 +225,95 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
         for (Object p:method.getParameters()){
             CtParameter parameter = (CtParameter) p;
             //methodName += "::" + parameter.getSimpleName();
-            parameterTypes.add(parameter.getType().getQualifiedName());
-            methodParameterTypes.add(parameter.getType().getQualifiedName());
+            String parameterType = names.intern(parameter.getType().getQualifiedName());
+            methodParameterTypes.add(parameterType);
             parameters.add(parameter.getSimpleName());
-            textAndNames.add(parameter.getSimpleName());
             methodTextAndNames.add(parameter.getSimpleName());
         }
         method_.addAllParameterNames(parameters);
         method_.addAllParameterTypes(methodParameterTypes);
         // get referenced types
-        List<String> methodReferencedTypes = new ArrayList<>(method.getReferencedTypes().size());
-        method.getReferencedTypes().forEach(type -> methodReferencedTypes.add(type.getQualifiedName()));
+        Set<CtTypeReference<?>> methodTypes = getReferencedTypes(method);
+        List<String> methodReferencedTypes = new ArrayList<>(methodTypes.size());
+        methodTypes.forEach(type -> methodReferencedTypes.add(names.intern(type.getQualifiedName())));
         method_.addAllReferencedTypes(methodReferencedTypes);
         // process and add name
-        classMethods.add(method.getSignature());
-        // add textual terms and comments
-        textAndNames.add(method.getSimpleName());
-        methodTextAndNames.add(method.getSimpleName());
-        method.getComments().forEach(comment -> {
-            textAndNames.add(comment.getContent());
-            methodTextAndNames.add(comment.getContent());
+        String signature = names.intern(method.getSignature());
+        // add textual terms and comments, the parameter names are always added to the terms of the type
+        if (!skipText) {
+            methodTextAndNames.add(method.getSimpleName());
+            method.getComments().forEach(comment -> methodTextAndNames.add(comment.getContent()));
+            methodTextAndNames.add(method.getDocComment());
+            getVariableReferences(method).forEach(var -> methodTextAndNames.add(var.getSimpleName()));
+            method_.addAllTextAndNames(methodTextAndNames);
+        }
+        return new ParsedMethod(method_.build(), returnType, methodParameterTypes, signature, methodTextAndNames);
+    }
+
+    // same result as the default ctType.getAllMethods(), which compares every method of the hierarchy with all the
+    // ones kept before it. Methods can only have the same signature when they have the same name and number of
+    // parameters so they are only compared within these groups, and added to the set in the same order. Enums
+    // override it (with the methods of java.lang.Enum and the implicit values() and valueOf()) so they keep using it
+    private Set<CtMethod<?>> getAllMethods(CtType<?> ctType) {
+        if (ctType instanceof CtEnum)
+            return ctType.getAllMethods();
+        Set<CtMethod<?>> allMethods = new HashSet<>();
+        Map<String, List<CtMethod<?>>> methodGroups = new HashMap<>();
+        ClassTypingContext typingContext = new ClassTypingContext(ctType);
+        ctType.map(new AllTypeMembersFunction(CtMethod.class)).forEach((CtMethod<?> method) -> {
+            List<CtMethod<?>> group = methodGroups.computeIfAbsent(
+                    method.getSimpleName() + "/" + method.getParameters().size(), k -> new ArrayList<>());
+            for (CtMethod<?> keptMethod : group) {
+                if (typingContext.isSameSignature(method, keptMethod))
+                    return;
+            }
+            group.add(method);
+            allMethods.add(method);
         });
-        textAndNames.add(method.getDocComment());
-        methodTextAndNames.add(method.getDocComment());
-        method.getElements(new TypeFilter(CtVariableReference.class)).forEach(
-                var -> {
-                    textAndNames.add(((CtVariableReference) var).getSimpleName());
-                    methodTextAndNames.add(((CtVariableReference) var).getSimpleName());
-                });
-        method_.addAllTextAndNames(methodTextAndNames);
-        //methodName = ctType.getQualifiedName() + "::" + methodName;
-        method_.setFullName(ctType.getQualifiedName() + "::" + method.getSignature());
-        method_.setAppName(this.getAppName());
-        if (this.getServiceName()!=null)
-            method_.setServiceName(this.getServiceName());
+        return allMethods;
+    }
+
+    // elements outside of the scanned model, such as methods inherited from libraries, are walked on their own
+    private Set<CtTypeReference<?>> getReferencedTypes(CtElement element) {
+        Set<CtTypeReference<?>> referencedTypes = (scanner == null) ? null : scanner.getReferencedTypes(element);
+        return (referencedTypes != null) ? referencedTypes : element.getReferencedTypes();
+    }
+
+    private List<? extends CtVariableReference<?>> getVariableReferences(CtElement element) {
+        List<CtVariableReference<?>> variableReferences =
+                (scanner == null) ? null : scanner.getVariableReferences(element);
+        return (variableReferences != null) ? variableReferences :
+                element.getElements(new TypeFilter<>(CtVariableReference.class));
+    }
+
+    private SourceRange getSourceRange(CtElement element) {
+        SourcePosition position = element.getPosition();
+        if (!position.isValidPosition() || (position.getFile() == null))
+            return null;
+        return SourceRange.newBuilder()
+                .setFilePath(names.intern(getFilePath(element)))
+                .setStart(position.getSourceStart())
+                .setEnd(position.getSourceEnd())
+                .build();
     }
 
+    static String getFilePath(CtElement element) {
+        if ((element.getPosition() == null) || (element.getPosition().getFile() == null))
+            return null;
+        return element.getPosition().getFile().toPath().toAbsolutePath().normalize().toString();
+    }
+
+    @Override
+    public boolean isToBeProcessed(CtType candidate) {
+        // restrict the analysis to the given source files when only part of the application is re-analyzed
+        return (filesToProcess == null) || filesToProcess.contains(getFilePath(candidate));
+    }
 
     @Override
     public void process(CtType ctType) {
         // logger.info("Started processing type \"" + ctType.getQualifiedName() + "\"");
+        AnalysisEvents.TypeProcessed event = new AnalysisEvents.TypeProcessed();
+        event.begin();
         Class_.Builder object_ = Class_.newBuilder();
         boolean isAnnotation;
         try {
@@ -211,14 +325,19 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
         object_.setIsImplicit(ctType.isImplicit());
         object_.setIsAnonymous(ctType.isAnonymous());
         object_.setSimpleName(ctType.getSimpleName());
-        object_.setFullName(ctType.getQualifiedName());
-        object_.setContent(ctType.toString());
+        object_.setFullName(names.intern(ctType.getQualifiedName()));
+        if (!skipText && !lazyContent)
+            object_.setContent(ctType.toString());
         addFilePath(ctType, object_);
+        SourceRange sourceRange = getSourceRange(ctType);
+        if (sourceRange != null)
+            object_.setSourceRange(sourceRange);
         List<String> textAndNames = new ArrayList<>();
         textAndNames.add(ctType.getSimpleName());
         //logger.info("Adding referenced types for \"" + ctType.getSimpleName() + "\"");
-        List<String> referencedTypes = new ArrayList<>(ctType.getReferencedTypes().size());
-        ctType.getReferencedTypes().forEach(type -> referencedTypes.add(type.getQualifiedName()));
+        Set<CtTypeReference<?>> typeReferences = getReferencedTypes(ctType);
+        List<String> referencedTypes = new ArrayList<>(typeReferences.size());
+        typeReferences.forEach(type -> referencedTypes.add(names.intern(type.getQualifiedName())));
         object_.addAllReferencedTypes(referencedTypes);
         //logger.info("Adding field types for \"" + ctType.getSimpleName() + "\"");
         parseFields(ctType, object_, textAndNames);
@@ -230,14 +349,14 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
         List<String> parameterTypes = new ArrayList<>();
         List<String> returnTypes = new ArrayList<>(ctType.getMethods().size());
         List<String> classMethods = new ArrayList<>(ctType.getMethods().size());
-        for (Object m:ctType.getAllMethods()){
+        for (Object m:getAllMethods(ctType)){
             //String methodName = method.getSimpleName();
             //logger.info("Processing method \"" + methodName + "\" for " + logText + " \"" +
             // ctType.getSimpleName() + "\"");
             Method_.Builder method_ = Method_.newBuilder();
             CtMethod method = (CtMethod) m;
             parseMethod(method, method_, ctType, textAndNames, parameterTypes, returnTypes, classMethods, false);
-            methods.add(method_.build());
+            addMethod(method_.build());
         }
         List<String> classConstructors = new ArrayList<>();
         if ((!object_.getIsInterface())&&(!isAnnotation)){
@@ -248,7 +367,7 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
                     Method_.Builder method_ = Method_.newBuilder();
                     parseMethod(constructor, method_, ctType, textAndNames, parameterTypes, returnTypes, classConstructors,
                             true);
-                    methods.add(method_.build());
+                    addMethod(method_.build());
                 }
             }
             catch (ClassCastException e) {
@@ -256,21 +375,41 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
             }
         }
         // add doc strings and all comments
-        ctType.getComments().forEach(comment -> textAndNames.add(comment.getContent()));
-        textAndNames.add(ctType.getDocComment());
+        if (!skipText) {
+            ctType.getComments().forEach(comment -> textAndNames.add(comment.getContent()));
+            textAndNames.add(ctType.getDocComment());
+        }
         // set object fields
         object_.addAllParameterTypes(parameterTypes);
         object_.addAllReturnTypes(returnTypes);
         object_.addAllMethods(classMethods);
         object_.addAllConstructors(classConstructors);
-        object_.addAllTextAndNames(textAndNames);
+        if (!skipText)
+            object_.addAllTextAndNames(textAndNames);
         object_.setAppName(this.getAppName());
         if (this.getServiceName()!=null)
             object_.setServiceName(this.getServiceName());
-        objects.add(object_.build());
+        Class_ class_ = object_.build();
+        objects.add(class_);
+        if (resultSink != null)
+            resultSink.acceptClass(class_);
+        if (event.shouldCommit()) {
+            event.appName = getAppName();
+            event.serviceName = getServiceName();
+            event.typeName = class_.getFullName();
+            event.methods = classMethods.size() + classConstructors.size();
+            event.fields = ctType.getFields().size();
+            event.commit();
+        }
         //logger.info("Finished processing " + logText + " \"" + ctType.getQualifiedName() + "\"");
     }
 
+    private void addMethod(Method_ method_) {
+        methods.add(method_);
+        if (resultSink != null)
+            resultSink.acceptMethod(method_);
+    }
+
     public String getServiceName() {
         return serviceName;
     }
@@ -278,4 +417,52 @@ public class TypeProcessor extends AbstractProcessor<CtType> {
     public void setServiceName(String serviceName) {
         this.serviceName = serviceName;
     }
+
+    public Set<String> getFilesToProcess() {
+        return filesToProcess;
+    }
+
+    public void setFilesToProcess(Set<String> filesToProcess) {
+        this.filesToProcess = filesToProcess;
+    }
+
+    public boolean isSkipText() {
+        return skipText;
+    }
+
+    public void setSkipText(boolean skipText) {
+        this.skipText = skipText;
+    }
+
+    public boolean isLazyContent() {
+        return lazyContent;
+    }
+
+    public void setLazyContent(boolean lazyContent) {
+        this.lazyContent = lazyContent;
+    }
+
+    public ResultSink getResultSink() {
+        return resultSink;
+    }
+
+    public void setResultSink(ResultSink resultSink) {
+        this.resultSink = resultSink;
+    }
+
+    public ModelScanner getScanner() {
+        return scanner;
+    }
+
+    public void setScanner(ModelScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    public NameInterner getNames() {
+        return names;
+    }
+
+    public void setNames(NameInterner names) {
+        this.names = names;
+    }
 }